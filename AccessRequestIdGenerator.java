@@ -0,0 +1,75 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.inject.Inject;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Generates time ordered access request ids in the UUIDv7 layout.
+ *
+ * The 48 most significant bits are the epoch millis of the request, followed by the version, a 12 bit sequence,
+ * the variant and 62 random bits drawn from {@link StripedSecureRandomCodeSource}, so ids can't be guessed from
+ * one another. Ids sort by creation time as strings
+ * and as UUIDs, so inserts land at the end of the key range and the requests of a time range are a range scan.
+ * Ids of one process are strictly increasing, when more than 4096 ids are taken within a millisecond the timestamp
+ * runs ahead of the clock until the clock catches up. {@link #epochMillis} recovers the timestamp of an id, which
+ * callers should use as the request time rather than reading the clock again.
+ */
+public class AccessRequestIdGenerator {
+    private static final int SEQUENCE_BITS = 12;
+    private static final long VERSION_7 = 0x7000L;
+    private static final long VARIANT_RFC_4122 = 0x8000_0000_0000_0000L;
+    private static final long RANDOM_MASK = (1L << 62) - 1;
+
+    private final LongSupplier clockMillis;
+    private final LongSupplier randomBits;
+    // epoch millis << SEQUENCE_BITS | sequence of the last id
+    private final AtomicLong last = new AtomicLong();
+
+    @Inject
+    public AccessRequestIdGenerator() {
+        this(System::currentTimeMillis, newRandomCodeSource()::nextLong);
+    }
+
+    @VisibleForTesting
+    AccessRequestIdGenerator(LongSupplier clockMillis, LongSupplier randomBits) {
+        this.clockMillis = clockMillis;
+        this.randomBits = randomBits;
+    }
+
+    public UUID next() {
+        long floor = clockMillis.getAsLong() << SEQUENCE_BITS;
+        long current = last.updateAndGet(previous -> Math.max(previous + 1, floor));
+        long epochMillis = current >>> SEQUENCE_BITS;
+        long sequence = current & ((1L << SEQUENCE_BITS) - 1);
+        long mostSignificantBits = epochMillis << 16 | VERSION_7 | sequence;
+        long leastSignificantBits = VARIANT_RFC_4122 | randomBits.getAsLong() & RANDOM_MASK;
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+
+    /**
+     * @return the lowest id of the given millisecond, the start key of a range scan over requests from then on
+     */
+    public static UUID lowestIdAt(long epochMillis) {
+        return new UUID(epochMillis << 16 | VERSION_7, VARIANT_RFC_4122);
+    }
+
+    public static long epochMillis(UUID id) {
+        return id.getMostSignificantBits() >>> 16;
+    }
+
+    private static StripedSecureRandomCodeSource newRandomCodeSource() {
+        try {
+            return new StripedSecureRandomCodeSource();
+        } catch (NoSuchAlgorithmException | NoSuchProviderException e) {
+            throw new IllegalStateException("Failed to find SecureRandom instance for access request ids", e);
+        }
+    }
+}
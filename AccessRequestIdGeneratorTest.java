@@ -0,0 +1,76 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AccessRequestIdGeneratorTest {
+    private static final long NOW_MILLIS = 1_600_000_000_000L;
+
+    private final AtomicLong clockMillis = new AtomicLong(NOW_MILLIS);
+    private final AccessRequestIdGenerator generator = new AccessRequestIdGenerator(clockMillis::get, () -> -1L);
+
+    @Test
+    public void testIdsAreVersion7AndCarryTheirTimestamp() {
+        UUID id = generator.next();
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        assertEquals(NOW_MILLIS, AccessRequestIdGenerator.epochMillis(id));
+    }
+
+    @Test
+    public void testIdsAreOrderedAsStrings() {
+        String previous = generator.next().toString();
+        for (int i = 0; i < 10_000; i++) {
+            if (i % 100 == 0) {
+                clockMillis.incrementAndGet();
+            }
+            String next = generator.next().toString();
+            assertTrue(previous + " < " + next, previous.compareTo(next) < 0);
+            previous = next;
+        }
+    }
+
+    @Test
+    public void testTimestampRunsAheadOnlyWhenSequenceIsExhausted() {
+        for (int i = 0; i < 4096; i++) {
+            assertEquals(NOW_MILLIS, AccessRequestIdGenerator.epochMillis(generator.next()));
+        }
+        assertEquals(NOW_MILLIS + 1, AccessRequestIdGenerator.epochMillis(generator.next()));
+    }
+
+    @Test
+    public void testLowestIdAtSortsBeforeIdsOfThatMillisecond() {
+        UUID id = generator.next();
+
+        assertTrue(AccessRequestIdGenerator.lowestIdAt(NOW_MILLIS).toString().compareTo(id.toString()) < 0);
+        assertTrue(id.toString().compareTo(AccessRequestIdGenerator.lowestIdAt(NOW_MILLIS + 1).toString()) < 0);
+    }
+
+    @Test
+    public void testTailCarries62RandomBits() {
+        UUID allOnes = new AccessRequestIdGenerator(clockMillis::get, () -> -1L).next();
+        UUID allZeros = new AccessRequestIdGenerator(clockMillis::get, () -> 0L).next();
+
+        assertEquals(0xBFFF_FFFF_FFFF_FFFFL, allOnes.getLeastSignificantBits());
+        assertEquals(0x8000_0000_0000_0000L, allZeros.getLeastSignificantBits());
+    }
+
+    @Test
+    public void testDefaultGeneratorDrawsDistinctTails() {
+        AccessRequestIdGenerator secureGenerator = new AccessRequestIdGenerator();
+        Set<Long> tails = new HashSet<>();
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(tails.add(secureGenerator.next().getLeastSignificantBits()));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.NonNull;
+
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of allowed access requests keyed by accessRequestId, so clients polling for admission are answered
+ * without a DAO read once they are let in.
+ *
+ * Only allowed requests are cached, pending and denied ones always go to the DAO. An allowed request is served from
+ * the cache for {@link #TTL_SECONDS} at most and then re-checked against the DAO, which bounds how long a status
+ * change made on another host, e.g. a moderator removing an admitted attendee, goes unseen. Status changes made on
+ * this host, including an approved request the write-behind writer failed to insert, call {@link #invalidate}.
+ */
+public class AccessRequestStatusCache {
+    @VisibleForTesting
+    static final long MAXIMUM_SIZE = 200_000;
+    @VisibleForTesting
+    static final long TTL_SECONDS = 5;
+
+    private final Cache<String, WaitingRoomAccessRequest> allowedRequests;
+
+    @Inject
+    public AccessRequestStatusCache() {
+        this(Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    AccessRequestStatusCache(Ticker ticker) {
+        this.allowedRequests = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_SIZE)
+                .expireAfterWrite(TTL_SECONDS, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    public WaitingRoomAccessRequest getIfAllowed(@NonNull String accessRequestId) {
+        return allowedRequests.getIfPresent(accessRequestId);
+    }
+
+    /**
+     * Remember the access request if it is allowed, otherwise drop any previous entry for it.
+     */
+    public void put(@NonNull WaitingRoomAccessRequest accessRequest) {
+        if (accessRequest.getAccessRequestId() == null) {
+            return;
+        }
+        if (accessRequest.isAllowed()) {
+            allowedRequests.put(accessRequest.getAccessRequestId(), accessRequest);
+        } else {
+            allowedRequests.invalidate(accessRequest.getAccessRequestId());
+        }
+    }
+
+    public void invalidate(String accessRequestId) {
+        if (accessRequestId != null) {
+            allowedRequests.invalidate(accessRequestId);
+        }
+    }
+}
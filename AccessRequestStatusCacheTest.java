@@ -0,0 +1,70 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.amazonaws.ucbuzzccp.AccessStatus;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessLevel;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AccessRequestStatusCacheTest {
+    private static final String ACCESS_REQUEST_ID = "access-request-id";
+
+    private final AtomicLong nanos = new AtomicLong();
+    private AccessRequestStatusCache accessRequestStatusCache;
+
+    @Before
+    public void setup() {
+        accessRequestStatusCache = new AccessRequestStatusCache(new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+    }
+
+    @Test
+    public void testAllowedRequestIsServedUntilTtl() {
+        WaitingRoomAccessRequest allowed = accessRequest(AccessStatus.APPROVED);
+        accessRequestStatusCache.put(allowed);
+        assertSame(allowed, accessRequestStatusCache.getIfAllowed(ACCESS_REQUEST_ID));
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(AccessRequestStatusCache.TTL_SECONDS));
+        assertNull(accessRequestStatusCache.getIfAllowed(ACCESS_REQUEST_ID));
+    }
+
+    @Test
+    public void testStatusChangeDropsAllowedRequest() {
+        WaitingRoomAccessRequest removed = mock(WaitingRoomAccessRequest.class);
+        when(removed.getAccessRequestId()).thenReturn(ACCESS_REQUEST_ID);
+        when(removed.isAllowed()).thenReturn(false);
+
+        accessRequestStatusCache.put(accessRequest(AccessStatus.APPROVED));
+        accessRequestStatusCache.put(removed);
+        assertNull(accessRequestStatusCache.getIfAllowed(ACCESS_REQUEST_ID));
+    }
+
+    @Test
+    public void testInvalidateDropsAllowedRequest() {
+        accessRequestStatusCache.put(accessRequest(AccessStatus.APPROVED));
+        accessRequestStatusCache.invalidate(ACCESS_REQUEST_ID);
+        assertNull(accessRequestStatusCache.getIfAllowed(ACCESS_REQUEST_ID));
+    }
+
+    private static WaitingRoomAccessRequest accessRequest(String status) {
+        return WaitingRoomAccessRequest.builder()
+                .accessRequestId(ACCESS_REQUEST_ID)
+                .status(WaitingRoomAccessLevel.fromString(status))
+                .build();
+    }
+}
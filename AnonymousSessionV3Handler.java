@@ -3,63 +3,170 @@
 package com.amazonaws.ucbuzzccp.handler;
 
 import com.amazonaws.ucbuzzccp.AccessStatus;
+import com.amazonaws.ucbuzzccp.LimitExceededException;
+import com.amazonaws.ucbuzzccp.NotFoundException;
 import com.amazonaws.ucbuzzccp.common.waitingRoom.WaitingRoomAccessRequestDecision;
 import com.amazonaws.ucbuzzccp.dao.WaitingRoomAccessRequestDao;
 import com.amazonaws.ucbuzzccp.dao.model.Pin;
 import com.amazonaws.ucbuzzccp.dao.model.WaitingRoom;
 import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessLevel;
 import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
+import com.amazonaws.ucbuzzccp.helper.AccessRequestIdGenerator;
+import com.amazonaws.ucbuzzccp.helper.AccessRequestStatusCache;
+import com.amazonaws.ucbuzzccp.helper.JoinPathExecutor;
+import com.amazonaws.ucbuzzccp.helper.JoinStageLatencies;
+import com.amazonaws.ucbuzzccp.helper.JoinStageLatencies.Stage;
+import com.amazonaws.ucbuzzccp.helper.PasscodeFailureThrottle;
+import com.amazonaws.ucbuzzccp.helper.PinResolutionContext;
 import com.amazonaws.ucbuzzccp.helper.V3MeetingExperienceHelper;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public class AnonymousSessionV3Handler {
+    private static final int MAXIMUM_PASSCODE_FAILURES_PER_CALLER = 20;
+    private static final int MAXIMUM_PASSCODE_FAILURES_PER_ACCOUNT = 200;
+
     @Autowired
     WaitingRoomAccessRequestDao waitingRoomAccessRequestDao;
 
     @Autowired protected WaitingRoomHandler waitingRoomHandler;
+    @Autowired protected WaitingRoomCache waitingRoomCache;
     @Autowired protected AttendeeAuthorizeHandler attendeeAuthorizeHandler;
     @Autowired V3MeetingExperienceHelper v3MeetingExperienceHelper;
-    private Pin pinModel;
+    @Autowired protected WaitingRoomAccessRequestWriter waitingRoomAccessRequestWriter;
+    @Autowired protected JoinStageLatencies joinStageLatencies;
+    @Autowired protected AccessRequestStatusCache accessRequestStatusCache;
+    @Autowired protected PasscodeFailureThrottle passcodeFailureThrottle;
+    @Autowired protected JoinPathExecutor joinPathExecutor;
+    @Autowired protected AccessRequestIdGenerator accessRequestIdGenerator;
+    @Autowired protected WaitingRoomPartitioner waitingRoomPartitioner;
 
     public WaitingRoomAccessRequest insertAccessRequestIntoWaitingRoom(String passcode,
             com.amazonaws.ucbuzzccp.dao.model.Conference conference,
             String profileId, String deviceId, String devicePlatform, String displayName, String awsAccountId) {
-        Pin pin = v3MeetingExperienceHelper.findConferencePin(passcode);
-        String organizerProfileId = pinModel.getProfileId();
-        boolean isV3MeetingsExperienceEnabled = v3MeetingExperienceHelper.isPinOwnerAllowlistedForV3Expereince(
-                organizerProfileId);
-        if (isV3MeetingsExperienceEnabled) {
-            WaitingRoom waitingRoom = waitingRoomHandler.getOrCreateWaitingRoom(pin, conference);
-            String uuid = UUID.randomUUID().toString();
-            Date requestedAt = new Date();
-            WaitingRoomAccessRequestDecision decisionCode =
-                    WaitingRoomAccessRequestDecision.DECISION_CODE_WR_REQUEST_SIGV4_AUTHENTICATED;
-            String resolvedDecision = decisionCode.toString();
-            log.info("Inserting the details into access request table for profile id {}", profileId);
-            WaitingRoomAccessRequest accessRequest = WaitingRoomAccessRequest.builder()
-                    .accessRequestId(uuid)
-                    .waitingRoomId(waitingRoom.getId())
-                    .partitionNum(waitingRoom.getPartitionNum())
-                    .profileId(profileId)
-                    .deviceId(deviceId)
-                    .devicePlatform(devicePlatform)
-                    .displayName(displayName)
-                    .isAnonymous(true)
-                    .status(WaitingRoomAccessLevel.fromString(AccessStatus.APPROVED))
-                    .requestedAt(requestedAt)
-                    .isModerator(false)
-                    .callerAwsAccount(awsAccountId)
-                    .shouldExpireAt(null)
-                    .resolvedReason(resolvedDecision)
-                    .build();
+        try (PinResolutionContext context = PinResolutionContext.open()) {
+            return insertAccessRequest(passcode, conference, profileId, deviceId, devicePlatform, displayName,
+                    awsAccountId);
+        }
+    }
+
+    /**
+     * Asynchronous {@link #insertAccessRequestIntoWaitingRoom}. The conference pin and the existing waiting room of
+     * the conference are looked up in parallel on the join path executor, the allowlist evaluation of the pin owner
+     * and the insert follow once both are done. The waiting room is only created, from the fetched pin, when the
+     * conference has none yet. Completes exceptionally with the exceptions the synchronous variant throws.
+     */
+    public CompletableFuture<WaitingRoomAccessRequest> insertAccessRequestIntoWaitingRoomAsync(String passcode,
+            com.amazonaws.ucbuzzccp.dao.model.Conference conference,
+            String profileId, String deviceId, String devicePlatform, String displayName, String awsAccountId) {
+        CompletableFuture<Pin> pinFetch = CompletableFuture.supplyAsync(() -> {
+            try (PinResolutionContext context = PinResolutionContext.open()) {
+                return findConferencePin(passcode, profileId, awsAccountId);
+            }
+        }, joinPathExecutor);
+        CompletableFuture<WaitingRoom> waitingRoomLookup = CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                return waitingRoomCache.loadWaitingRoom(conference);
+            } finally {
+                joinStageLatencies.record(Stage.GetOrCreateWaitingRoom, start);
+            }
+        }, joinPathExecutor);
+        return pinFetch.thenCombineAsync(waitingRoomLookup, (pin, waitingRoom) -> insertAccessRequest(pin,
+                waitingRoom, conference, profileId, deviceId, devicePlatform, displayName, awsAccountId),
+                joinPathExecutor);
+    }
+
+    private WaitingRoomAccessRequest insertAccessRequest(String passcode,
+            com.amazonaws.ucbuzzccp.dao.model.Conference conference,
+            String profileId, String deviceId, String devicePlatform, String displayName, String awsAccountId) {
+        Pin pin = findConferencePin(passcode, profileId, awsAccountId);
+        return insertAccessRequest(pin, null, conference, profileId, deviceId, devicePlatform, displayName,
+                awsAccountId);
+    }
+
+    /**
+     * Inserts an approved access request if the owner of the fetched conference pin is allowlisted for the V3
+     * meeting experience, into the given waiting room or, when there is none, the one got or created for the pin.
+     */
+    private WaitingRoomAccessRequest insertAccessRequest(Pin pin, WaitingRoom existingWaitingRoom,
+            com.amazonaws.ucbuzzccp.dao.model.Conference conference,
+            String profileId, String deviceId, String devicePlatform, String displayName, String awsAccountId) {
+        if (pin.getBelongsToEntityId() == null
+                || !v3MeetingExperienceHelper.isPinOwnerAllowlistedForV3Expereince(pin.getBelongsToEntityId())) {
+            return new WaitingRoomAccessRequest();
+        }
+        WaitingRoom waitingRoom = existingWaitingRoom;
+        if (waitingRoom == null) {
+            long start = System.nanoTime();
+            waitingRoom = waitingRoomCache.getOrCreateWaitingRoom(pin, conference);
+            joinStageLatencies.record(Stage.GetOrCreateWaitingRoom, start);
+        }
+        UUID accessRequestId = accessRequestIdGenerator.next();
+        String uuid = accessRequestId.toString();
+        Date requestedAt = new Date(AccessRequestIdGenerator.epochMillis(accessRequestId));
+        WaitingRoomAccessRequestDecision decisionCode =
+                WaitingRoomAccessRequestDecision.DECISION_CODE_WR_REQUEST_SIGV4_AUTHENTICATED;
+        String resolvedDecision = decisionCode.toString();
+        log.info("Inserting the details into access request table for profile id {}", profileId);
+        WaitingRoomAccessRequest accessRequest = WaitingRoomAccessRequest.builder()
+                .accessRequestId(uuid)
+                .waitingRoomId(waitingRoom.getId())
+                .partitionNum(waitingRoomPartitioner.partitionFor(waitingRoom, uuid))
+                .profileId(profileId)
+                .deviceId(deviceId)
+                .devicePlatform(devicePlatform)
+                .displayName(displayName)
+                .isAnonymous(true)
+                .status(WaitingRoomAccessLevel.fromString(AccessStatus.APPROVED))
+                .requestedAt(requestedAt)
+                .isModerator(false)
+                .callerAwsAccount(awsAccountId)
+                .shouldExpireAt(null)
+                .resolvedReason(resolvedDecision)
+                .build();
+        start = System.nanoTime();
+        if (waitingRoomAccessRequestWriter.isEnabled()) {
+            waitingRoomAccessRequestWriter.submit(accessRequest);
+        } else {
             waitingRoomAccessRequestDao.insert(accessRequest);
-            return accessRequest;
         }
-        return new WaitingRoomAccessRequest();
+        joinStageLatencies.record(Stage.AccessRequestInsert, start);
+        accessRequestStatusCache.put(accessRequest);
+        return accessRequest;
+    }
+
+    /**
+     * Looks up the conference pin unless the caller failed too many lookups recently, in which case the caller is
+     * rejected without any DAO read. Callers are keyed on the SigV4 authenticated account and the profile of their
+     * session, never on request supplied values such as the device id, which a caller can rotate at will. The
+     * account wide limit only turns away callers that failed lookups themselves, so one caller enumerating passcodes
+     * doesn't lock every other caller of the account out.
+     */
+    private Pin findConferencePin(String passcode, String profileId, String awsAccountId) {
+        if (!passcodeFailureThrottle.isEnabled()) {
+            return v3MeetingExperienceHelper.findConferencePin(passcode);
+        }
+        String callerKey = awsAccountId == null || profileId == null ? null
+                : "caller:" + awsAccountId + ":" + profileId;
+        String accountKey = awsAccountId == null ? null : "account:" + awsAccountId;
+        if (passcodeFailureThrottle.isThrottled(callerKey, MAXIMUM_PASSCODE_FAILURES_PER_CALLER)
+                || passcodeFailureThrottle.hasFailures(callerKey)
+                && passcodeFailureThrottle.isThrottled(accountKey, MAXIMUM_PASSCODE_FAILURES_PER_ACCOUNT)) {
+            log.warn("Rejecting join of profile {} after repeated invalid passcodes", profileId);
+            throw new LimitExceededException("Too many invalid passcodes, try again later");
+        }
+        try {
+            return v3MeetingExperienceHelper.findConferencePin(passcode);
+        } catch (NotFoundException e) {
+            passcodeFailureThrottle.recordFailure(callerKey);
+            passcodeFailureThrottle.recordFailure(accountKey);
+            throw e;
+        }
     }
 }
@@ -5,14 +5,15 @@ import com.amazon.coral.metrics.Metrics;
 import com.amazon.metrics.declarative.MetricsManager;
 import com.amazonaws.services.ucbuzzprofileservice.model.Profile;
 import com.amazonaws.services.ucbuzzprofileservice.model.ProfileType;
-import com.amazonaws.ucbuzz.meetings.sdc.MeetingsDynamicConfigProvider;
 import com.amazonaws.ucbuzzccp.AccessStatus;
 import com.amazonaws.ucbuzzccp.ForbiddenException;
+import com.amazonaws.ucbuzzccp.LimitExceededException;
 import com.amazonaws.ucbuzzccp.MeetingType;
 import com.amazonaws.ucbuzzccp.NotFoundException;
 import com.amazonaws.ucbuzzccp.common.PasscodeInfo;
 import com.amazonaws.ucbuzzccp.common.pin.PinManager;
 import com.amazonaws.ucbuzzccp.dao.WaitingRoomAccessRequestDao;
+import com.amazonaws.ucbuzzccp.dao.WaitingRoomDao;
 import com.amazonaws.ucbuzzccp.dao.model.Attendee;
 import com.amazonaws.ucbuzzccp.dao.model.Conference;
 import com.amazonaws.ucbuzzccp.dao.model.ConferencePermissions;
@@ -23,6 +24,11 @@ import com.amazonaws.ucbuzzccp.dao.model.PinType;
 import com.amazonaws.ucbuzzccp.dao.model.WaitingRoom;
 import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
 
+import com.amazonaws.ucbuzzccp.helper.AccessRequestIdGenerator;
+import com.amazonaws.ucbuzzccp.helper.AccessRequestStatusCache;
+import com.amazonaws.ucbuzzccp.helper.JoinPathExecutor;
+import com.amazonaws.ucbuzzccp.helper.JoinStageLatencies;
+import com.amazonaws.ucbuzzccp.helper.PasscodeFailureThrottle;
 import com.amazonaws.ucbuzzccp.helper.PasscodeParseHelper;
 import com.amazonaws.ucbuzzccp.helper.V3MeetingExperienceHelper;
 import com.amazonaws.ucbuzzccp.spring.SpringUnitTestBase;
@@ -33,7 +39,9 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import static com.amazonaws.ucbuzzccp.handler.ExceptionHandler.newNotFoundExceptionWithCode;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -43,16 +51,21 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import static com.amazonaws.ucbuzzccp.handler.AttendeeAuthorizeHandler.ACCESS_REQUEST_EXPIRY_IN_MINUTES;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class AnonymousSessionV3HandlerTest extends SpringUnitTestBase {
     private static final String HASHED_MODERATOR_CODE = "hashed-moderator-code";
@@ -66,7 +79,6 @@ public class AnonymousSessionV3HandlerTest extends SpringUnitTestBase {
     private static final String CONFERENCE_ID = UUID.randomUUID().toString();
     private static final String RODA_URL = "roda-url";
 
-    private static final String ORGANNIZER_PROFILE_ID = "organizerProfileId";
     private static final Pin PIN = Pin.builder()
             .code(PASSCODE)
             .moderatedStatus(ModeratedStatus.MODERATED)
@@ -99,9 +111,6 @@ public class AnonymousSessionV3HandlerTest extends SpringUnitTestBase {
     @Mock
     protected WaitingRoomHandler waitingRoomHandler;
 
-    @Mock
-    MeetingsDynamicConfigProvider meetingsConfig;
-
 //    @Mock
 //    private PinManager pinManager;
     @Mock
@@ -112,9 +121,20 @@ public class AnonymousSessionV3HandlerTest extends SpringUnitTestBase {
 
     @Mock protected WaitingRoomAccessRequestDao waitingRoomAccessRequestDao;
 
+    @Mock private WaitingRoomDao waitingRoomDao;
+
     @Mock private V3MeetingExperienceHelper v3MeetingExperienceHelper;
 
-    @Mock Pin pinModel;
+    @Mock private WaitingRoomAccessRequestWriter waitingRoomAccessRequestWriter;
+
+    @Mock private JoinStageLatencies joinStageLatencies;
+
+    @Mock private PasscodeFailureThrottle passcodeFailureThrottle;
+
+    @Mock private WaitingRoomPartitioner waitingRoomPartitioner;
+
+    @Mock private JoinPathExecutor joinPathExecutor;
+
     private static final String DEVICE_ID = "device-id";
     private static final String REQUESTER_PROFILE_ID = "requester-profile-id";
     private static final String REQUESTER_WT_ACCOUNT = "requester-wt-account";
@@ -133,16 +153,30 @@ public class AnonymousSessionV3HandlerTest extends SpringUnitTestBase {
         anonymousSessionV3Handler = new AnonymousSessionV3Handler();
 //        v3MeetingExperienceHelper = new V3MeetingExperienceHelper();
         ReflectionTestUtils.setField(anonymousSessionV3Handler, "waitingRoomHandler", waitingRoomHandler);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "waitingRoomCache",
+                new WaitingRoomCache(waitingRoomHandler, waitingRoomDao));
         ReflectionTestUtils.setField(anonymousSessionV3Handler, "waitingRoomAccessRequestDao", waitingRoomAccessRequestDao);
         ReflectionTestUtils.setField(anonymousSessionV3Handler, "v3MeetingExperienceHelper", v3MeetingExperienceHelper);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "waitingRoomAccessRequestWriter",
+                waitingRoomAccessRequestWriter);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "joinStageLatencies", joinStageLatencies);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "accessRequestStatusCache",
+                new AccessRequestStatusCache());
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "passcodeFailureThrottle", passcodeFailureThrottle);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "accessRequestIdGenerator",
+                new AccessRequestIdGenerator());
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "waitingRoomPartitioner", waitingRoomPartitioner);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "joinPathExecutor", joinPathExecutor);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[0]).run();
+            return null;
+        }).when(joinPathExecutor).execute(any(Runnable.class));
 //        ReflectionTestUtils.setField(anonymousSessionV3Handler, "pinManager", pinManager);
 //        ReflectionTestUtils.setField(anonymousSessionV3Handler, "metricsManager", metricsManager);
 //        ReflectionTestUtils.setField(anonymousSessionV3Handler, "passcodeInfo", passcodeInfo);
         ReflectionTestUtils.setField(anonymousSessionV3Handler, "waitingRoomAccessRequestDao", waitingRoomAccessRequestDao);
 //        ReflectionTestUtils.setField(anonymousSessionV3Handler, "pinHandler", pinHandler);
-        ReflectionTestUtils.setField(anonymousSessionV3Handler, "pinModel", pinModel);
 //        ReflectionTestUtils.setField(anonymousSessionV3Handler, "", );
-        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "meetingsConfig", meetingsConfig);
         ReflectionTestUtils.setField(v3MeetingExperienceHelper, "pinHandler", pinHandler);
         ReflectionTestUtils.setField(v3MeetingExperienceHelper, "passcodeParseHelper", passcodeParseHelperMock);
 
@@ -156,6 +190,7 @@ public class AnonymousSessionV3HandlerTest extends SpringUnitTestBase {
         when(waitingRoomHandler.getOrCreateWaitingRoom(PIN, CONFERENCE)).thenReturn(WAITING_ROOM);
 //        when(v3MeetingExperienceHelper.findConferencePin(PASSCODE)).thenReturn(PIN);
         when(v3MeetingExperienceHelper.isPinOwnerAllowlistedForV3Expereince(PIN_OWNER)).thenReturn(true);
+        when(v3MeetingExperienceHelper.isPinOwnerAllowlistedForV3Expereince(ADMIN_PROFILE_ID)).thenReturn(true);
 //        when(passcodeParseHelper.parseAndVerifyPasscode(PASSCODE, false))
 //                .thenReturn(new PasscodeInfo(PASSCODE, null, null));
     }
@@ -183,7 +218,6 @@ public class AnonymousSessionV3HandlerTest extends SpringUnitTestBase {
         when(pinHandler.findPin("VAPASSCODE", false)).thenReturn(PIN);
         when(passcodeParseHelperMock.parseAndVerifyPasscode("VAPASSCODE", false)).thenReturn(info);
         when(v3MeetingExperienceHelper.findConferencePin(PASSCODE)).thenReturn(PIN);
-        when(pinModel.getProfileId()).thenReturn(ORGANNIZER_PROFILE_ID);
         anonymousSessionV3Handler.insertAccessRequestIntoWaitingRoom("1234567890", CONFERENCE, "PROFILE", "DEVICE_ID","DEVICE_PLATFORM", "NAME", "36246224468");
         verify(waitingRoomAccessRequestDao, times(1)).insert(any());
     }
@@ -201,7 +235,6 @@ public class AnonymousSessionV3HandlerTest extends SpringUnitTestBase {
 //                .thenReturn(new PasscodeInfo("VALIDPASSCODE", null, null));
         //when(v3MeetingExperienceHelper.findConferencePin(PASSCODE)).thenReturn(PIN);
         when(v3MeetingExperienceHelper.findConferencePin(PASSCODE)).thenThrow(new NotFoundException("Cannot Find Conference Pin"));
-        when(pinModel.getProfileId()).thenReturn(ORGANNIZER_PROFILE_ID);
         anonymousSessionV3Handler.insertAccessRequestIntoWaitingRoom("PASSCODE", CONFERENCE, "PROFILE", "DEVICE_ID", "DEVICE_PLATFORM","NAME", "36246224468");
         //verify(waitingRoomAccessRequestDao, times(0)).insert(any());
     }
@@ -220,9 +253,94 @@ public class AnonymousSessionV3HandlerTest extends SpringUnitTestBase {
         //        when(passcodeParseHelperMock.parseAndVerifyPasscode("VALIDPASSCODE", false))
         //                .thenReturn(new PasscodeInfo("VALIDPASSCODE", null, null));
         when(v3MeetingExperienceHelper.findConferencePin(PASSCODE)).thenReturn(PIN);
-        when(pinModel.getProfileId()).thenReturn(ORGANNIZER_PROFILE_ID);
         when(waitingRoomHandler
                 .getOrCreateWaitingRoom(any(), any())).thenThrow(new IllegalArgumentException("Preconditions fail"));
         anonymousSessionV3Handler.insertAccessRequestIntoWaitingRoom("PASSCODE", CONFERENCE, "PROFILE", "DEVICE_ID", "DEVICE_PLATFORM", "NAME", "36246224468");
     }
+
+    @Test
+    public void testAccountLimitSparesCallersWithoutFailures() {
+        when(passcodeFailureThrottle.isEnabled()).thenReturn(true);
+        when(passcodeFailureThrottle.isThrottled(eq("account:36246224468"), anyInt())).thenReturn(true);
+        when(passcodeFailureThrottle.hasFailures("caller:36246224468:PROFILE")).thenReturn(false);
+        when(v3MeetingExperienceHelper.findConferencePin(PASSCODE)).thenReturn(PIN);
+
+        anonymousSessionV3Handler.insertAccessRequestIntoWaitingRoom(PASSCODE, CONFERENCE, "PROFILE", "DEVICE_ID",
+                "DEVICE_PLATFORM", "NAME", "36246224468");
+
+        verify(v3MeetingExperienceHelper).findConferencePin(PASSCODE);
+    }
+
+    @Test
+    public void testAccountLimitRejectsCallersWithFailures() {
+        when(passcodeFailureThrottle.isEnabled()).thenReturn(true);
+        when(passcodeFailureThrottle.isThrottled(eq("account:36246224468"), anyInt())).thenReturn(true);
+        when(passcodeFailureThrottle.hasFailures("caller:36246224468:PROFILE")).thenReturn(true);
+
+        try {
+            anonymousSessionV3Handler.insertAccessRequestIntoWaitingRoom(PASSCODE, CONFERENCE, "PROFILE",
+                    "ROTATED_DEVICE_ID", "DEVICE_PLATFORM", "NAME", "36246224468");
+        } catch (LimitExceededException e) {
+            verify(v3MeetingExperienceHelper, never()).findConferencePin(anyString());
+            return;
+        }
+        throw new AssertionError("Caller with failures was not throttled");
+    }
+
+    @Test
+    public void testAsyncInsertEvaluatesAllowlistOfFetchedPinOwner() throws Exception {
+        when(v3MeetingExperienceHelper.findConferencePin(PASSCODE)).thenReturn(PIN);
+        when(v3MeetingExperienceHelper.isPinOwnerAllowlistedForV3Expereince(ADMIN_PROFILE_ID)).thenReturn(true);
+
+        WaitingRoomAccessRequest accessRequest = anonymousSessionV3Handler.insertAccessRequestIntoWaitingRoomAsync(
+                PASSCODE, CONFERENCE, "PROFILE", "DEVICE_ID", "DEVICE_PLATFORM", "NAME", "36246224468").get();
+
+        assertEquals(WAITING_ROOM_ID, accessRequest.getWaitingRoomId());
+        verify(v3MeetingExperienceHelper).isPinOwnerAllowlistedForV3Expereince(ADMIN_PROFILE_ID);
+        verify(waitingRoomAccessRequestDao).insert(accessRequest);
+    }
+
+    @Test
+    public void testAsyncInsertUsesWaitingRoomLookedUpAlongsidePinFetch() throws Exception {
+        when(v3MeetingExperienceHelper.findConferencePin(PASSCODE)).thenReturn(PIN);
+        when(waitingRoomDao.loadByConferenceId(CONFERENCE_ID)).thenReturn(WAITING_ROOM);
+
+        WaitingRoomAccessRequest accessRequest = anonymousSessionV3Handler.insertAccessRequestIntoWaitingRoomAsync(
+                PASSCODE, CONFERENCE, "PROFILE", "DEVICE_ID", "DEVICE_PLATFORM", "NAME", "36246224468").get();
+
+        assertEquals(WAITING_ROOM_ID, accessRequest.getWaitingRoomId());
+        verify(waitingRoomHandler, never()).getOrCreateWaitingRoom(any(), any());
+        verify(waitingRoomAccessRequestDao).insert(accessRequest);
+    }
+
+    @Test
+    public void testAsyncInsertSkipsPinOwnersNotAllowlisted() throws Exception {
+        when(v3MeetingExperienceHelper.findConferencePin(PASSCODE)).thenReturn(PIN);
+        when(v3MeetingExperienceHelper.isPinOwnerAllowlistedForV3Expereince(ADMIN_PROFILE_ID)).thenReturn(false);
+
+        WaitingRoomAccessRequest accessRequest = anonymousSessionV3Handler.insertAccessRequestIntoWaitingRoomAsync(
+                PASSCODE, CONFERENCE, "PROFILE", "DEVICE_ID", "DEVICE_PLATFORM", "NAME", "36246224468").get();
+
+        assertNull(accessRequest.getAccessRequestId());
+        verify(waitingRoomAccessRequestDao, never()).insert(any());
+    }
+
+    @Test
+    public void testAsyncInsertCompletesExceptionallyForUnknownPasscode() throws Exception {
+        when(v3MeetingExperienceHelper.findConferencePin(PASSCODE))
+                .thenThrow(new NotFoundException("Cannot Find Conference Pin"));
+
+        CompletableFuture<WaitingRoomAccessRequest> accessRequest =
+                anonymousSessionV3Handler.insertAccessRequestIntoWaitingRoomAsync(PASSCODE, CONFERENCE, "PROFILE",
+                        "DEVICE_ID", "DEVICE_PLATFORM", "NAME", "36246224468");
+
+        try {
+            accessRequest.get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NotFoundException);
+            verify(v3MeetingExperienceHelper, never()).isPinOwnerAllowlistedForV3Expereince(anyString());
+            return;
+        }
+        throw new AssertionError("Unknown passcode did not fail the insert");
+    }
 }
@@ -0,0 +1,144 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.amazonaws.ucbuzzccp.LimitExceededException;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
+import com.amazonaws.ucbuzzccp.handler.WaitingRoomPartitioner;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocates user dial-in codes per waiting room from an in-memory bitmap of the 5 digit suffix space.
+ *
+ * The bitmap of a waiting room is seeded once from its existing access requests, read from every partition of the
+ * room through the {@link WaitingRoomPartitioner}, and from then on picks a free suffix with a single random probe
+ * instead of guessing blindly. The bitmap only knows the codes this host has seen, so the chosen code is still
+ * checked against the partitions of the room before it is handed out, as codes allocated by other hosts since the
+ * seed are only visible there. A code found taken stays marked and the next free suffix is tried, up to
+ * {@link #ALLOCATION_TRIES_MAX_LIMIT} times. Waiting rooms idle for {@link #IDLE_EXPIRY_MINUTES} are dropped and
+ * re-seeded on next use.
+ */
+@Slf4j
+public class DialInCodeAllocator {
+    @VisibleForTesting
+    static final int USER_PIN_LENGTH = 5;
+    // pin space is only 90000 not 100000 for pin policy of 5, suffixes start at 10000
+    @VisibleForTesting
+    static final int CODE_SPACE_OFFSET = 10_000;
+    @VisibleForTesting
+    static final int CODE_SPACE_SIZE = 90_000;
+    private static final long MAXIMUM_WAITING_ROOMS = 10_000;
+    private static final long IDLE_EXPIRY_MINUTES = 60;
+    @VisibleForTesting
+    static final int ALLOCATION_TRIES_MAX_LIMIT = 10;
+
+    private final WaitingRoomPartitioner waitingRoomPartitioner;
+    private final LoadingCache<String, WaitingRoomCodes> waitingRooms;
+
+    @Inject
+    public DialInCodeAllocator(WaitingRoomPartitioner waitingRoomPartitioner) {
+        this.waitingRoomPartitioner = waitingRoomPartitioner;
+        this.waitingRooms = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_WAITING_ROOMS)
+                .expireAfterAccess(IDLE_EXPIRY_MINUTES, TimeUnit.MINUTES)
+                .build(new CacheLoader<String, WaitingRoomCodes>() {
+                    @Override
+                    public WaitingRoomCodes load(String wrId) {
+                        return seed(wrId, waitingRoomPartitioner);
+                    }
+                });
+    }
+
+    /**
+     * @return a dial-in code made of the base code followed by a 5 digit suffix not yet used in the waiting room
+     * @throws LimitExceededException when every suffix of the waiting room is taken or every try collided with a
+     * code allocated elsewhere
+     */
+    public String allocate(@NonNull String wrId, @NonNull String baseCode,
+            @NonNull RandomCodeSource randomCodeSource) {
+        WaitingRoomCodes codes = waitingRooms.getUnchecked(wrId);
+        for (int tryCount = 0; tryCount < ALLOCATION_TRIES_MAX_LIMIT; tryCount++) {
+            int suffix = codes.allocate(randomCodeSource.nextInt(CODE_SPACE_SIZE));
+            if (suffix < 0) {
+                throw new LimitExceededException("No waiting room user dial-in codes left for waiting room " + wrId);
+            }
+            String code = baseCode + (CODE_SPACE_OFFSET + suffix);
+            if (waitingRoomPartitioner.loadWRAccessRequestByDialInCode(wrId, code) == null) {
+                return code;
+            }
+            log.info("User dial-in code already taken in waitingRoomId: {}, trying next free code", wrId);
+        }
+        log.info("Max tries reached: Cannot make more than {} tries to allocate waiting room user dial-in code",
+                ALLOCATION_TRIES_MAX_LIMIT);
+        throw new LimitExceededException("Max tries reached for allocating waiting room user dial-in code");
+    }
+
+    public void invalidate(String wrId) {
+        waitingRooms.invalidate(wrId);
+    }
+
+    @VisibleForTesting
+    int allocatedCount(String wrId) {
+        return waitingRooms.getUnchecked(wrId).allocatedCount();
+    }
+
+    private static WaitingRoomCodes seed(String wrId, WaitingRoomPartitioner waitingRoomPartitioner) {
+        WaitingRoomCodes codes = new WaitingRoomCodes();
+        for (WaitingRoomAccessRequest request : waitingRoomPartitioner.loadWRAccessRequests(wrId)) {
+            String dialInCode = request.getUserDialInCode();
+            if (dialInCode == null || dialInCode.length() < USER_PIN_LENGTH) {
+                continue;
+            }
+            try {
+                codes.markUsed(Integer.parseInt(dialInCode.substring(dialInCode.length() - USER_PIN_LENGTH))
+                        - CODE_SPACE_OFFSET);
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring malformed user dial-in code in waiting room {}", wrId);
+            }
+        }
+        log.info("Seeded {} used user dial-in codes for waitingRoomId: {}", codes.allocatedCount(), wrId);
+        return codes;
+    }
+
+    private static final class WaitingRoomCodes {
+        private final BitSet used = new BitSet(CODE_SPACE_SIZE);
+        private int allocated;
+
+        synchronized void markUsed(int suffix) {
+            if (suffix >= 0 && suffix < CODE_SPACE_SIZE && !used.get(suffix)) {
+                used.set(suffix);
+                allocated++;
+            }
+        }
+
+        /**
+         * Takes the first free suffix at or after the random start, wrapping around once. While the space is
+         * sparse this is a single probe.
+         */
+        synchronized int allocate(int start) {
+            if (allocated == CODE_SPACE_SIZE) {
+                return -1;
+            }
+            int suffix = used.nextClearBit(start);
+            if (suffix >= CODE_SPACE_SIZE) {
+                suffix = used.nextClearBit(0);
+            }
+            used.set(suffix);
+            allocated++;
+            return suffix;
+        }
+
+        synchronized int allocatedCount() {
+            return allocated;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.amazonaws.ucbuzzccp.LimitExceededException;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
+import com.amazonaws.ucbuzzccp.handler.WaitingRoomPartitioner;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class DialInCodeAllocatorTest {
+    private static final String WR_ID = "wr-id";
+    private static final String MEETING_PIN = "1234567890";
+
+    @Mock
+    private WaitingRoomPartitioner waitingRoomPartitioner;
+
+    private DialInCodeAllocator dialInCodeAllocator;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(waitingRoomPartitioner.loadWRAccessRequests(WR_ID)).thenReturn(Collections.emptyList());
+        dialInCodeAllocator = new DialInCodeAllocator(waitingRoomPartitioner);
+    }
+
+    @Test
+    public void testSeedsOnceAndSkipsUsedCodes() {
+        WaitingRoomAccessRequest existing = WaitingRoomAccessRequest.builder()
+                .userDialInCode(MEETING_PIN + "10000")
+                .build();
+        when(waitingRoomPartitioner.loadWRAccessRequests(WR_ID)).thenReturn(Arrays.asList(existing));
+
+        RandomCodeSource alwaysFirst = bound -> 0;
+        assertEquals(MEETING_PIN + "10001", dialInCodeAllocator.allocate(WR_ID, MEETING_PIN, alwaysFirst));
+        assertEquals(MEETING_PIN + "10002", dialInCodeAllocator.allocate(WR_ID, MEETING_PIN, alwaysFirst));
+        verify(waitingRoomPartitioner, times(1)).loadWRAccessRequests(WR_ID);
+    }
+
+    @Test
+    public void testSkipsCodesTakenByOtherHosts() {
+        when(waitingRoomPartitioner.loadWRAccessRequestByDialInCode(WR_ID, MEETING_PIN + "10000"))
+                .thenReturn(WaitingRoomAccessRequest.builder().userDialInCode(MEETING_PIN + "10000").build());
+
+        RandomCodeSource alwaysFirst = bound -> 0;
+        assertEquals(MEETING_PIN + "10001", dialInCodeAllocator.allocate(WR_ID, MEETING_PIN, alwaysFirst));
+        assertEquals(MEETING_PIN + "10002", dialInCodeAllocator.allocate(WR_ID, MEETING_PIN, alwaysFirst));
+    }
+
+    @Test(expected = LimitExceededException.class)
+    public void testGivesUpAfterMaxCollisions() {
+        when(waitingRoomPartitioner.loadWRAccessRequestByDialInCode(eq(WR_ID), anyString()))
+                .thenReturn(WaitingRoomAccessRequest.builder().build());
+
+        dialInCodeAllocator.allocate(WR_ID, MEETING_PIN, bound -> 0);
+    }
+
+    @Test(expected = LimitExceededException.class)
+    public void testExhaustedWaitingRoom() {
+        RandomCodeSource random = new Random(42)::nextInt;
+        Set<String> codes = new HashSet<>();
+        for (int i = 0; i < DialInCodeAllocator.CODE_SPACE_SIZE; i++) {
+            assertTrue(codes.add(dialInCodeAllocator.allocate(WR_ID, MEETING_PIN, random)));
+        }
+        dialInCodeAllocator.allocate(WR_ID, MEETING_PIN, random);
+    }
+
+    @Test
+    public void testConcurrentAllocationsAreUnique() throws Exception {
+        Set<String> codes = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> allocations = new ArrayList<>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                allocations.add(executor.submit(() -> {
+                    RandomCodeSource random = new Random()::nextInt;
+                    for (int j = 0; j < 1000; j++) {
+                        assertTrue(codes.add(dialInCodeAllocator.allocate(WR_ID, MEETING_PIN, random)));
+                    }
+                }));
+            }
+            for (Future<?> allocation : allocations) {
+                // surfaces assertion failures and exceptions of the worker threads
+                allocation.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(8000, codes.size());
+        assertEquals(8000, dialInCodeAllocator.allocatedCount(WR_ID));
+    }
+}
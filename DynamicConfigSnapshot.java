@@ -0,0 +1,139 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.amazonaws.ucbuzz.meetings.sdc.MeetingsDynamicConfigProvider;
+import com.google.common.annotations.VisibleForTesting;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import javax.measure.unit.Unit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Snapshot of dynamic config decisions used on the join and pin create paths.
+ *
+ * Every decision is evaluated against {@link MeetingsDynamicConfigProvider} once per snapshot generation and then
+ * served from a lock-free map. The provider doesn't expose change notifications, so a new generation is started
+ * once the current one is older than the refresh interval, which bounds how long a config change takes to apply.
+ * Evaluation and lookup counts of a generation are published when it is replaced. Kill switches that must apply at
+ * once are read through {@link #getBooleanUncached} instead.
+ */
+@Slf4j
+public class DynamicConfigSnapshot {
+    @VisibleForTesting
+    static final long DEFAULT_REFRESH_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    @VisibleForTesting
+    static final int MAXIMUM_DECISIONS_PER_FEATURE = 100_000;
+
+    private final MeetingsDynamicConfigProvider meetingsConfig;
+    private final ServiceMetricsPublisher serviceMetricsPublisher;
+    private final long refreshIntervalMillis;
+    private final AtomicReference<Generation> current;
+
+    @Inject
+    public DynamicConfigSnapshot(MeetingsDynamicConfigProvider meetingsConfig,
+            ServiceMetricsPublisher serviceMetricsPublisher) {
+        this(meetingsConfig, serviceMetricsPublisher, DEFAULT_REFRESH_INTERVAL_MILLIS);
+    }
+
+    @VisibleForTesting
+    DynamicConfigSnapshot(MeetingsDynamicConfigProvider meetingsConfig,
+            ServiceMetricsPublisher serviceMetricsPublisher, long refreshIntervalMillis) {
+        this.meetingsConfig = meetingsConfig;
+        this.serviceMetricsPublisher = serviceMetricsPublisher;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.current = new AtomicReference<>(new Generation(System.currentTimeMillis()));
+    }
+
+    public boolean isFeatureOnFor(@NonNull String feature, @NonNull String entityId) {
+        Generation generation = generation();
+        generation.lookups.increment();
+        Map<String, Boolean> decisions = generation.features.get(feature);
+        if (decisions == null) {
+            decisions = generation.features.computeIfAbsent(feature, f -> new ConcurrentHashMap<>());
+        }
+        Boolean decision = decisions.get(entityId);
+        if (decision == null) {
+            generation.evaluations.increment();
+            decision = meetingsConfig.isFeatureOnFor(feature, entityId);
+            if (decisions.size() < MAXIMUM_DECISIONS_PER_FEATURE) {
+                decisions.put(entityId, decision);
+            }
+        }
+        return decision;
+    }
+
+    public boolean getBoolean(@NonNull String key, boolean defaultValue) {
+        Generation generation = generation();
+        generation.lookups.increment();
+        // the value of an unset key is the default of the call, so decisions are cached per default
+        Map<String, Boolean> booleans = defaultValue ? generation.booleansDefaultingTrue
+                : generation.booleansDefaultingFalse;
+        Boolean value = booleans.get(key);
+        if (value == null) {
+            generation.evaluations.increment();
+            value = meetingsConfig.getBoolean(key, defaultValue);
+            booleans.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Reads the value from the dynamic config on every call, for kill switches that must not wait for the next
+     * snapshot generation to apply.
+     */
+    public boolean getBooleanUncached(@NonNull String key, boolean defaultValue) {
+        return meetingsConfig.getBoolean(key, defaultValue);
+    }
+
+    /**
+     * Drop every cached decision so the next lookup re-evaluates against the dynamic config.
+     */
+    public void refresh() {
+        replace(current.get(), System.currentTimeMillis());
+    }
+
+    private Generation generation() {
+        Generation generation = current.get();
+        long now = System.currentTimeMillis();
+        if (now - generation.createdAtMillis >= refreshIntervalMillis) {
+            return replace(generation, now);
+        }
+        return generation;
+    }
+
+    private Generation replace(Generation expired, long now) {
+        Generation next = new Generation(now);
+        if (!current.compareAndSet(expired, next)) {
+            return current.get();
+        }
+        // the replacing lookup may run on any thread, the counts belong to the service and not to its request
+        serviceMetricsPublisher.publish("DynamicConfigSnapshot", metrics -> {
+            metrics.addCount("DynamicConfigSnapshot:Refresh", 1, Unit.ONE);
+            metrics.addCount("DynamicConfigSnapshot:Lookups", expired.lookups.sum(), Unit.ONE);
+            metrics.addCount("DynamicConfigSnapshot:Evaluations", expired.evaluations.sum(), Unit.ONE);
+        });
+        log.debug("Replaced dynamic config snapshot after {} lookups and {} evaluations",
+                expired.lookups.sum(), expired.evaluations.sum());
+        return next;
+    }
+
+    private static final class Generation {
+        private final long createdAtMillis;
+        private final Map<String, Map<String, Boolean>> features = new ConcurrentHashMap<>();
+        private final Map<String, Boolean> booleansDefaultingFalse = new ConcurrentHashMap<>();
+        private final Map<String, Boolean> booleansDefaultingTrue = new ConcurrentHashMap<>();
+        private final LongAdder lookups = new LongAdder();
+        private final LongAdder evaluations = new LongAdder();
+
+        Generation(long createdAtMillis) {
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.benchmark;
+
+import com.amazonaws.ucbuzzccp.dao.model.Conference;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.dao.model.PinType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pin and waiting room join path against {@link JoinPathFakes} with injected remote call latency.
+ *
+ * {@link #main} runs every benchmark of the suite at several thread counts and writes one JMH JSON result file
+ * per thread count into the directory given as first argument, so results can be diffed between builds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JoinPathBenchmark {
+    private static final int[] THREAD_COUNTS = {1, 8, 32};
+    private static final String CONFERENCE_PASSCODE = "1234567890";
+    private static final String ORGANIZER_PROFILE_ID = "organizer-profile-id";
+    private static final int DIAL_IN_CODES_PER_WAITING_ROOM = 50_000;
+
+    @Param({"0", "200", "2000"})
+    public long remoteLatencyMicros;
+
+    private JoinPathFixture fixture;
+    private Conference conference;
+    private final AtomicLong dialInCodeCount = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        Pin conferencePin = Pin.builder()
+                .code(CONFERENCE_PASSCODE)
+                .type(PinType.Conference.name())
+                .profileId(ORGANIZER_PROFILE_ID)
+                .belongsToEntityId(ORGANIZER_PROFILE_ID)
+                .build();
+        JoinPathFakes fakes = new JoinPathFakes(remoteLatencyMicros);
+        fakes.addPin(conferencePin);
+        fixture = new JoinPathFixture(fakes);
+        conference = Conference.builder().id("conference-id").passcode(CONFERENCE_PASSCODE).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.shutdown();
+    }
+
+    @Benchmark
+    public Object parseAndVerifyPasscode() {
+        return fixture.getPasscodeParseHelper().parseAndVerifyPasscode(CONFERENCE_PASSCODE, false);
+    }
+
+    @Benchmark
+    public String generateUserDialInCode() {
+        // move on to a new waiting room well before the 90000 code space of one fills up
+        long count = dialInCodeCount.getAndIncrement();
+        return fixture.getPasscodeParseHelper().generateUserDialInCode(
+                "wr-" + count / DIAL_IN_CODES_PER_WAITING_ROOM, "profile-id", CONFERENCE_PASSCODE);
+    }
+
+    @Benchmark
+    public Pin findPin() {
+        return fixture.getPinHandler().findPin(CONFERENCE_PASSCODE);
+    }
+
+    @Benchmark
+    public Pin findConferencePin() {
+        return fixture.getV3MeetingExperienceHelper().findConferencePin(CONFERENCE_PASSCODE);
+    }
+
+    @Benchmark
+    public Object insertAccessRequestIntoWaitingRoom() {
+        return fixture.getAnonymousSessionV3Handler().insertAccessRequestIntoWaitingRoom(CONFERENCE_PASSCODE,
+                conference, "anonymous-profile-id", "device-id", "device-platform", "display-name",
+                "aws-account-id");
+    }
+
+    public static void main(String[] args) throws Exception {
+        String resultDirectory = args.length > 0 ? args[0] : ".";
+        for (int threads : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .include(JoinPathBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(resultDirectory + "/join-path-" + threads + "-threads.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
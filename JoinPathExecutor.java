@@ -0,0 +1,54 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.measure.unit.Unit;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor the asynchronous V3 join path runs its DAO and client calls on.
+ *
+ * The calls underneath are blocking, so they run on a bounded pool of their own rather than the common fork join
+ * pool. When the pool and its queue are saturated the task runs on the submitting thread, which degrades the join
+ * to the synchronous path instead of failing it. Tasks run off the request thread, so what happens on this pool
+ * publishes through {@link ServiceMetricsPublisher} rather than the request scoped metrics.
+ */
+public class JoinPathExecutor implements Executor {
+    @VisibleForTesting
+    static final int POOL_SIZE = 64;
+    @VisibleForTesting
+    static final int QUEUE_CAPACITY = 10_000;
+
+    private final ThreadPoolExecutor executor;
+
+    @Inject
+    public JoinPathExecutor(ServiceMetricsPublisher serviceMetricsPublisher) {
+        this.executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                new ThreadFactoryBuilder().setNameFormat("join-path-%d").setDaemon(true).build(),
+                (task, pool) -> {
+                    serviceMetricsPublisher.publish("JoinPathExecutor",
+                            metrics -> metrics.addCount("JoinPathExecutor:CallerRuns", 1, Unit.ONE));
+                    task.run();
+                });
+    }
+
+    @Override
+    public void execute(@NonNull Runnable task) {
+        executor.execute(task);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,311 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.benchmark;
+
+import com.amazon.coral.metrics.Metrics;
+import com.amazon.coral.metrics.MetricsFactory;
+import com.amazon.metrics.declarative.MetricsManager;
+import com.amazonaws.ucbuzz.meetings.sdc.MeetingsDynamicConfigProvider;
+import com.amazonaws.ucbuzzccp.common.pin.PinManager;
+import com.amazonaws.ucbuzzccp.dao.PinAliasDao;
+import com.amazonaws.ucbuzzccp.dao.PinDao;
+import com.amazonaws.ucbuzzccp.dao.WaitingRoomAccessRequestDao;
+import com.amazonaws.ucbuzzccp.dao.WaitingRoomDao;
+import com.amazonaws.ucbuzzccp.dao.model.Conference;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.dao.model.PinAlias;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoom;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
+import com.amazonaws.ucbuzzccp.handler.PinAliasHandler;
+import com.amazonaws.ucbuzzccp.handler.WaitingRoomHandler;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * In-memory stand-ins for the remote dependencies of the pin and waiting room join path.
+ *
+ * Every remote call is answered from a concurrent map after parking the calling thread for the configured latency,
+ * fails with the configured error rate, and is counted so benchmarks and load runs can report remote calls per
+ * operation. The stand-ins are stub-only mocks, which don't record invocations, so heap use stays flat across long
+ * runs and the per call overhead stays small next to the measured code.
+ */
+public class JoinPathFakes {
+    private static final int PARTITION_SPACING = 8;
+
+    private final long latencyNanos;
+    private final double errorRate;
+    @Getter
+    private final LongAdder remoteCalls = new LongAdder();
+
+    private final Map<String, Pin> pins = new ConcurrentHashMap<>();
+    private final Map<String, Long> pinAddedAtMillis = new ConcurrentHashMap<>();
+    private final Map<String, String> aliases = new ConcurrentHashMap<>();
+    private final Map<String, WaitingRoomAccessRequest> accessRequests = new ConcurrentHashMap<>();
+    private final Map<String, WaitingRoom> waitingRooms = new ConcurrentHashMap<>();
+    // spaced so every waiting room can split to the maximum fan out without reaching the next one
+    private final AtomicInteger nextPartitionNum = new AtomicInteger();
+
+    public JoinPathFakes(long latencyMicros) {
+        this(latencyMicros, 0);
+    }
+
+    public JoinPathFakes(long latencyMicros, double errorRate) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        this.errorRate = errorRate;
+    }
+
+    public void addPin(Pin pin) {
+        pins.put(pin.getCode(), pin);
+        pinAddedAtMillis.put(pin.getCode(), System.currentTimeMillis());
+    }
+
+    public void addAlias(String alias, String passcode) {
+        aliases.put(alias, passcode);
+    }
+
+    public PinManager pinManager() {
+        PinManager pinManager = mock(PinManager.class, withSettings().stubOnly());
+        when(pinManager.find(anyString())).thenAnswer(invocation -> {
+            remoteCall();
+            return pins.get((String) invocation.getArguments()[0]);
+        });
+        return pinManager;
+    }
+
+    public PinAliasHandler pinAliasHandler() {
+        PinAliasHandler pinAliasHandler = mock(PinAliasHandler.class, withSettings().stubOnly());
+        when(pinAliasHandler.resolveToPasscode(anyString())).thenAnswer(invocation -> {
+            remoteCall();
+            String code = (String) invocation.getArguments()[0];
+            return aliases.getOrDefault(code, code);
+        });
+        return pinAliasHandler;
+    }
+
+    public PinDao pinDao() {
+        PinDao pinDao = mock(PinDao.class, withSettings().stubOnly());
+        doAnswer(invocation -> {
+            remoteCall();
+            addPin((Pin) invocation.getArguments()[0]);
+            return null;
+        }).when(pinDao).update(any(Pin.class));
+        when(pinDao.loadAllActiveCodes()).thenAnswer(invocation -> {
+            remoteCall();
+            return new ArrayList<>(pins.keySet());
+        });
+        when(pinDao.loadActiveCodesCreatedSince(any(Date.class))).thenAnswer(invocation -> {
+            remoteCall();
+            long sinceMillis = ((Date) invocation.getArguments()[0]).getTime();
+            return pinAddedAtMillis.entrySet().stream()
+                    .filter(added -> added.getValue() >= sinceMillis)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        });
+        when(pinDao.loadCodesChangedSince(any(Date.class))).thenAnswer(invocation -> {
+            remoteCall();
+            long sinceMillis = ((Date) invocation.getArguments()[0]).getTime();
+            return pinAddedAtMillis.entrySet().stream()
+                    .filter(changed -> changed.getValue() >= sinceMillis)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        });
+        when(pinDao.loadAllActive()).thenAnswer(invocation -> {
+            remoteCall();
+            return new ArrayList<>(pins.values());
+        });
+        return pinDao;
+    }
+
+    public PinAliasDao pinAliasDao() {
+        PinAliasDao pinAliasDao = mock(PinAliasDao.class, withSettings().stubOnly());
+        when(pinAliasDao.loadAll()).thenAnswer(invocation -> {
+            remoteCall();
+            return aliases.entrySet().stream()
+                    .map(alias -> PinAlias.builder().alias(alias.getKey()).code(alias.getValue()).build())
+                    .collect(Collectors.toList());
+        });
+        when(pinAliasDao.getAlias(anyString())).thenAnswer(invocation -> {
+            remoteCall();
+            String alias = (String) invocation.getArguments()[0];
+            String code = aliases.get(alias);
+            return code == null ? null : PinAlias.builder().alias(alias).code(code).build();
+        });
+        return pinAliasDao;
+    }
+
+    public WaitingRoomAccessRequestDao waitingRoomAccessRequestDao() {
+        WaitingRoomAccessRequestDao dao = mock(WaitingRoomAccessRequestDao.class, withSettings().stubOnly());
+        doAnswer(invocation -> {
+            remoteCall();
+            WaitingRoomAccessRequest accessRequest = (WaitingRoomAccessRequest) invocation.getArguments()[0];
+            accessRequests.put(accessRequest.getAccessRequestId(), accessRequest);
+            return null;
+        }).when(dao).insert(any(WaitingRoomAccessRequest.class));
+        doAnswer(invocation -> {
+            remoteCall();
+            @SuppressWarnings("unchecked")
+            List<WaitingRoomAccessRequest> batch = (List<WaitingRoomAccessRequest>) invocation.getArguments()[0];
+            batch.forEach(accessRequest -> accessRequests.put(accessRequest.getAccessRequestId(), accessRequest));
+            return Collections.emptyList();
+        }).when(dao).batchInsert(anyList());
+        when(dao.load(anyString())).thenAnswer(invocation -> {
+            remoteCall();
+            return accessRequests.get((String) invocation.getArguments()[0]);
+        });
+        when(dao.loadWRAccessRequestsByWrId(anyString())).thenAnswer(invocation -> {
+            remoteCall();
+            String wrId = (String) invocation.getArguments()[0];
+            return accessRequests.values().stream()
+                    .filter(accessRequest -> wrId.equals(accessRequest.getWaitingRoomId()))
+                    .collect(Collectors.toList());
+        });
+        when(dao.loadWRAccessRequestByDialInCodeAndWrId(anyString(), anyString())).thenAnswer(invocation -> {
+            remoteCall();
+            String dialInCode = (String) invocation.getArguments()[0];
+            String wrId = (String) invocation.getArguments()[1];
+            return accessRequests.values().stream()
+                    .filter(accessRequest -> wrId.equals(accessRequest.getWaitingRoomId())
+                            && dialInCode.equals(accessRequest.getUserDialInCode()))
+                    .findFirst()
+                    .orElse(null);
+        });
+        when(dao.loadWRAccessRequestsByWrIdAndPartition(anyString(), anyInt())).thenAnswer(invocation -> {
+            remoteCall();
+            String wrId = (String) invocation.getArguments()[0];
+            int partition = (Integer) invocation.getArguments()[1];
+            return accessRequests.values().stream()
+                    .filter(accessRequest -> wrId.equals(accessRequest.getWaitingRoomId())
+                            && Objects.equals(partition, accessRequest.getPartitionNum()))
+                    .collect(Collectors.toList());
+        });
+        when(dao.loadWRAccessRequestByDialInCodeAndWrIdAndPartition(anyString(), anyString(), anyInt()))
+                .thenAnswer(invocation -> {
+                    remoteCall();
+                    String dialInCode = (String) invocation.getArguments()[0];
+                    String wrId = (String) invocation.getArguments()[1];
+                    int partition = (Integer) invocation.getArguments()[2];
+                    return accessRequests.values().stream()
+                            .filter(accessRequest -> wrId.equals(accessRequest.getWaitingRoomId())
+                                    && Objects.equals(partition, accessRequest.getPartitionNum())
+                                    && dialInCode.equals(accessRequest.getUserDialInCode()))
+                            .findFirst()
+                            .orElse(null);
+                });
+        return dao;
+    }
+
+    public WaitingRoomHandler waitingRoomHandler() {
+        WaitingRoomHandler waitingRoomHandler = mock(WaitingRoomHandler.class, withSettings().stubOnly());
+        when(waitingRoomHandler.getOrCreateWaitingRoom(any(Pin.class), any(Conference.class)))
+                .thenAnswer(invocation -> {
+                    remoteCall();
+                    Conference conference = (Conference) invocation.getArguments()[1];
+                    return waitingRooms.computeIfAbsent(conference.getId(), id -> WaitingRoom.builder()
+                            .id("wr-" + id)
+                            .partitionNum(nextPartitionNum.getAndAdd(PARTITION_SPACING))
+                            .revision(1L)
+                            .build());
+                });
+        return waitingRoomHandler;
+    }
+
+    public WaitingRoomDao waitingRoomDao() {
+        WaitingRoomDao dao = mock(WaitingRoomDao.class, withSettings().stubOnly());
+        when(dao.loadByConferenceId(anyString())).thenAnswer(invocation -> {
+            remoteCall();
+            return waitingRooms.get((String) invocation.getArguments()[0]);
+        });
+        when(dao.load(anyString())).thenAnswer(invocation -> {
+            remoteCall();
+            return waitingRoom((String) invocation.getArguments()[0]);
+        });
+        when(dao.loadByPartitionNumBetween(anyInt(), anyInt())).thenAnswer(invocation -> {
+            remoteCall();
+            int from = (Integer) invocation.getArguments()[0];
+            int to = (Integer) invocation.getArguments()[1];
+            return waitingRooms.values().stream()
+                    .filter(waitingRoom -> waitingRoom.getPartitionNum() >= from
+                            && waitingRoom.getPartitionNum() <= to)
+                    .collect(Collectors.toList());
+        });
+        when(dao.raisePartitionFanOut(anyString(), anyInt())).thenAnswer(invocation -> {
+            remoteCall();
+            WaitingRoom waitingRoom = waitingRoom((String) invocation.getArguments()[0]);
+            int fanOut = (Integer) invocation.getArguments()[1];
+            synchronized (waitingRoom) {
+                if (waitingRoom.getPartitionFanOut() == null || waitingRoom.getPartitionFanOut() < fanOut) {
+                    waitingRoom.setPartitionFanOut(fanOut);
+                }
+                return waitingRoom.getPartitionFanOut();
+            }
+        });
+        return dao;
+    }
+
+    public MeetingsDynamicConfigProvider meetingsConfig(boolean v3MeetingExperienceEnabled) {
+        MeetingsDynamicConfigProvider meetingsConfig =
+                mock(MeetingsDynamicConfigProvider.class, withSettings().stubOnly());
+        when(meetingsConfig.isFeatureOnFor(anyString(), anyString())).thenAnswer(invocation -> {
+            remoteCall();
+            return v3MeetingExperienceEnabled;
+        });
+        when(meetingsConfig.getBoolean(anyString(), anyBoolean())).thenAnswer(invocation -> {
+            remoteCall();
+            return invocation.getArguments()[1];
+        });
+        return meetingsConfig;
+    }
+
+    public static MetricsManager metricsManager() {
+        MetricsManager metricsManager = mock(MetricsManager.class, withSettings().stubOnly());
+        when(metricsManager.get()).thenReturn(mock(Metrics.class, withSettings().stubOnly()));
+        return metricsManager;
+    }
+
+    public static ServiceMetricsPublisher serviceMetricsPublisher() {
+        MetricsFactory metricsFactory = mock(MetricsFactory.class, withSettings().stubOnly());
+        when(metricsFactory.newMetrics()).thenReturn(mock(Metrics.class, withSettings().stubOnly()));
+        return new ServiceMetricsPublisher(metricsFactory);
+    }
+
+    private WaitingRoom waitingRoom(String waitingRoomId) {
+        return waitingRooms.values().stream()
+                .filter(waitingRoom -> waitingRoomId.equals(waitingRoom.getId()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private void remoteCall() {
+        remoteCalls.increment();
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            throw new IllegalStateException("Injected remote call failure");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.benchmark;
+
+import com.amazon.metrics.declarative.MetricsManager;
+import com.amazonaws.ucbuzzccp.common.identity.CCPIdentityClient;
+import com.amazonaws.ucbuzzccp.common.pin.PinManager;
+import com.amazonaws.ucbuzzccp.dao.PinAliasDao;
+import com.amazonaws.ucbuzzccp.dao.PinDao;
+import com.amazonaws.ucbuzzccp.dao.WaitingRoomAccessRequestDao;
+import com.amazonaws.ucbuzzccp.handler.AnonymousSessionV3Handler;
+import com.amazonaws.ucbuzzccp.handler.LivePinFilter;
+import com.amazonaws.ucbuzzccp.handler.OffHeapPinSnapshot;
+import com.amazonaws.ucbuzzccp.handler.PinAliasIndex;
+import com.amazonaws.ucbuzzccp.handler.PinHandler;
+import com.amazonaws.ucbuzzccp.handler.PinLookupCache;
+import com.amazonaws.ucbuzzccp.handler.ProfileCache;
+import com.amazonaws.ucbuzzccp.handler.WaitingRoomAccessRequestWriter;
+import com.amazonaws.ucbuzzccp.handler.WaitingRoomCache;
+import com.amazonaws.ucbuzzccp.handler.WaitingRoomHandler;
+import com.amazonaws.ucbuzzccp.handler.WaitingRoomPartitioner;
+import com.amazonaws.ucbuzzccp.helper.DialInCodeAllocator;
+import com.amazonaws.ucbuzzccp.helper.AccessRequestIdGenerator;
+import com.amazonaws.ucbuzzccp.helper.AccessRequestStatusCache;
+import com.amazonaws.ucbuzzccp.helper.DynamicConfigSnapshot;
+import com.amazonaws.ucbuzzccp.helper.JoinPathExecutor;
+import com.amazonaws.ucbuzzccp.helper.JoinStageLatencies;
+import com.amazonaws.ucbuzzccp.helper.PasscodeFailureThrottle;
+import com.amazonaws.ucbuzzccp.helper.PasscodeParseHelper;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import com.amazonaws.ucbuzzccp.helper.V3MeetingExperienceHelper;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wires the real join path classes together on top of {@link JoinPathFakes}, the way the application context
+ * would wire them on top of the real DAOs and clients.
+ */
+@Getter
+public class JoinPathFixture {
+    private final JoinPathFakes fakes;
+    private final PinHandler pinHandler;
+    private final PasscodeParseHelper passcodeParseHelper;
+    private final V3MeetingExperienceHelper v3MeetingExperienceHelper;
+    private final AnonymousSessionV3Handler anonymousSessionV3Handler;
+    @Getter(AccessLevel.NONE)
+    private final List<Runnable> shutdowns = new ArrayList<>();
+
+    public JoinPathFixture(JoinPathFakes fakes) {
+        this.fakes = fakes;
+        MetricsManager metricsManager = JoinPathFakes.metricsManager();
+        ServiceMetricsPublisher serviceMetricsPublisher = JoinPathFakes.serviceMetricsPublisher();
+        PinManager pinManager = fakes.pinManager();
+        WaitingRoomAccessRequestDao waitingRoomAccessRequestDao = fakes.waitingRoomAccessRequestDao();
+        WaitingRoomHandler waitingRoomHandler = fakes.waitingRoomHandler();
+        DynamicConfigSnapshot dynamicConfigSnapshot =
+                new DynamicConfigSnapshot(fakes.meetingsConfig(true), serviceMetricsPublisher);
+
+        JoinStageLatencies joinStageLatencies = new JoinStageLatencies(serviceMetricsPublisher);
+        AccessRequestStatusCache accessRequestStatusCache = new AccessRequestStatusCache();
+        JoinPathExecutor joinPathExecutor = new JoinPathExecutor(serviceMetricsPublisher);
+        shutdowns.add(joinStageLatencies::shutdown);
+        shutdowns.add(joinPathExecutor::shutdown);
+        WaitingRoomCache waitingRoomCache = new WaitingRoomCache(waitingRoomHandler, fakes.waitingRoomDao());
+        WaitingRoomPartitioner waitingRoomPartitioner = new WaitingRoomPartitioner(waitingRoomAccessRequestDao,
+                fakes.waitingRoomDao(), waitingRoomCache, serviceMetricsPublisher);
+        shutdowns.add(waitingRoomPartitioner::shutdown);
+
+        PinAliasDao pinAliasDao = fakes.pinAliasDao();
+        PinDao pinDao = fakes.pinDao();
+
+        PinAliasIndex pinAliasIndex = new PinAliasIndex(pinAliasDao, dynamicConfigSnapshot, serviceMetricsPublisher);
+        LivePinFilter livePinFilter = new LivePinFilter(pinDao, dynamicConfigSnapshot, serviceMetricsPublisher);
+        OffHeapPinSnapshot offHeapPinSnapshot =
+                new OffHeapPinSnapshot(pinDao, dynamicConfigSnapshot, serviceMetricsPublisher);
+        shutdowns.add(pinAliasIndex::shutdown);
+        shutdowns.add(livePinFilter::shutdown);
+        shutdowns.add(offHeapPinSnapshot::shutdown);
+        pinHandler = new PinHandler(pinManager, fakes.pinAliasHandler(), pinAliasDao, pinDao,
+                dynamicConfigSnapshot, new PinLookupCache(), pinAliasIndex, livePinFilter, offHeapPinSnapshot,
+                new ProfileCache(mock(CCPIdentityClient.class, withSettings().stubOnly()), metricsManager),
+                joinStageLatencies);
+
+        passcodeParseHelper = new PasscodeParseHelper();
+        ReflectionTestUtils.setField(passcodeParseHelper, "pinManager", pinManager);
+        ReflectionTestUtils.setField(passcodeParseHelper, "metricsManager", metricsManager);
+        ReflectionTestUtils.setField(passcodeParseHelper, "serviceMetricsPublisher", serviceMetricsPublisher);
+        ReflectionTestUtils.setField(passcodeParseHelper, "dialInCodeAllocator",
+                new DialInCodeAllocator(waitingRoomPartitioner));
+
+        v3MeetingExperienceHelper = new V3MeetingExperienceHelper();
+        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "dynamicConfigSnapshot", dynamicConfigSnapshot);
+        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "pinHandler", pinHandler);
+        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "passcodeParseHelper", passcodeParseHelper);
+        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "waitingRoomAccessRequestDao",
+                waitingRoomAccessRequestDao);
+        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "joinStageLatencies", joinStageLatencies);
+        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "accessRequestStatusCache",
+                accessRequestStatusCache);
+        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "joinPathExecutor", joinPathExecutor);
+
+        anonymousSessionV3Handler = new AnonymousSessionV3Handler();
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "waitingRoomAccessRequestDao",
+                waitingRoomAccessRequestDao);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "waitingRoomHandler", waitingRoomHandler);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "waitingRoomCache", waitingRoomCache);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "v3MeetingExperienceHelper",
+                v3MeetingExperienceHelper);
+        WaitingRoomAccessRequestWriter waitingRoomAccessRequestWriter = new WaitingRoomAccessRequestWriter(
+                waitingRoomAccessRequestDao, accessRequestStatusCache, dynamicConfigSnapshot, serviceMetricsPublisher);
+        shutdowns.add(waitingRoomAccessRequestWriter::shutdown);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "waitingRoomAccessRequestWriter",
+                waitingRoomAccessRequestWriter);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "joinStageLatencies", joinStageLatencies);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "accessRequestStatusCache",
+                accessRequestStatusCache);
+        PasscodeFailureThrottle passcodeFailureThrottle =
+                new PasscodeFailureThrottle(dynamicConfigSnapshot, serviceMetricsPublisher);
+        shutdowns.add(passcodeFailureThrottle::shutdown);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "passcodeFailureThrottle", passcodeFailureThrottle);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "joinPathExecutor", joinPathExecutor);
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "accessRequestIdGenerator",
+                new AccessRequestIdGenerator());
+        ReflectionTestUtils.setField(anonymousSessionV3Handler, "waitingRoomPartitioner", waitingRoomPartitioner);
+    }
+
+    /**
+     * Stops the background threads of the wired classes, the way the application context would on close.
+     */
+    public void shutdown() {
+        shutdowns.forEach(Runnable::run);
+    }
+}
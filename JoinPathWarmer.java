@@ -0,0 +1,225 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.ConferenceDao;
+import com.amazonaws.ucbuzzccp.dao.PinDao;
+import com.amazonaws.ucbuzzccp.dao.model.Conference;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Warms the pin, alias and waiting room caches of a freshly started host before it takes joins.
+ *
+ * Once the application context is built the pins of the conferences starting within the upcoming window and the
+ * most joined codes are loaded through the same {@link PinHandler} lookups the join path makes, then the waiting
+ * rooms of the conferences whose pin was found are loaded through the read-only
+ * {@link WaitingRoomCache#loadWaitingRoom}, so warm-up never creates a waiting room. Warm-up runs before startup
+ * completes, the host takes traffic once it finished or its time budget ran out, whichever comes first, so a slow or
+ * failing warm-up delays but never blocks taking traffic.
+ *
+ * The caches expire entries a fixed time after they were loaded, so each phase gets a budget well below the TTL of
+ * the cache it fills: a third of the 60s pin TTL of {@link PinLookupCache} for pins, and a fifth of the 10s TTL of
+ * {@link WaitingRoomCache} for waiting rooms, warmed last. Every warmed entry is therefore still cached when traffic
+ * arrives. JoinPathWarmer:HitRate is the hit rate of the pin cache over the pin TTL after warm-up, the window the
+ * warmed pins are served in.
+ */
+@Slf4j
+public class JoinPathWarmer {
+    @VisibleForTesting
+    static final long UPCOMING_WINDOW_MINUTES = 30;
+    @VisibleForTesting
+    static final int HOT_CODES = 10_000;
+    @VisibleForTesting
+    static final long PIN_BUDGET_SECONDS = 20;
+    @VisibleForTesting
+    static final long WAITING_ROOM_BUDGET_SECONDS = 2;
+    @VisibleForTesting
+    static final long HIT_RATE_WINDOW_SECONDS = 60;
+    private static final int WARM_UP_PARALLELISM = 8;
+
+    private final ConferenceDao conferenceDao;
+    private final PinDao pinDao;
+    private final PinHandler pinHandler;
+    private final PinLookupCache pinLookupCache;
+    private final WaitingRoomCache waitingRoomCache;
+    private final ServiceMetricsPublisher serviceMetricsPublisher;
+    private final ScheduledExecutorService hitRatePublisher;
+    private final LongAdder attempted = new LongAdder();
+    private final LongAdder loaded = new LongAdder();
+
+    @Inject
+    public JoinPathWarmer(ConferenceDao conferenceDao, PinDao pinDao, PinHandler pinHandler,
+            PinLookupCache pinLookupCache, WaitingRoomCache waitingRoomCache,
+            ServiceMetricsPublisher serviceMetricsPublisher) {
+        this(conferenceDao, pinDao, pinHandler, pinLookupCache, waitingRoomCache, serviceMetricsPublisher,
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                        .setNameFormat("join-path-warmer-hit-rate").setDaemon(true).build()));
+    }
+
+    @VisibleForTesting
+    JoinPathWarmer(ConferenceDao conferenceDao, PinDao pinDao, PinHandler pinHandler, PinLookupCache pinLookupCache,
+            WaitingRoomCache waitingRoomCache, ServiceMetricsPublisher serviceMetricsPublisher,
+            ScheduledExecutorService hitRatePublisher) {
+        this.conferenceDao = conferenceDao;
+        this.pinDao = pinDao;
+        this.pinHandler = pinHandler;
+        this.pinLookupCache = pinLookupCache;
+        this.waitingRoomCache = waitingRoomCache;
+        this.serviceMetricsPublisher = serviceMetricsPublisher;
+        this.hitRatePublisher = hitRatePublisher;
+    }
+
+    @PostConstruct
+    public void warmUp() {
+        long startMillis = System.currentTimeMillis();
+        boolean budgetExceeded = false;
+        try {
+            List<Conference> conferences = loadUpcomingConferences(startMillis);
+            Queue<Conference> withPin = new ConcurrentLinkedQueue<>();
+            List<Runnable> pinWarmUps = new ArrayList<>();
+            for (Conference conference : conferences) {
+                pinWarmUps.add(() -> {
+                    if (warmPin(conference.getPasscode()) != null) {
+                        withPin.add(conference);
+                    }
+                });
+            }
+            for (String code : loadHotCodes()) {
+                pinWarmUps.add(() -> warmPin(code));
+            }
+            budgetExceeded = !runWithin(pinWarmUps, PIN_BUDGET_SECONDS);
+
+            List<Runnable> waitingRoomWarmUps = new ArrayList<>();
+            for (Conference conference : withPin) {
+                waitingRoomWarmUps.add(() -> warmWaitingRoom(conference));
+            }
+            budgetExceeded |= !runWithin(waitingRoomWarmUps, WAITING_ROOM_BUDGET_SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Join path warm-up failed", e);
+        } finally {
+            publish(System.currentTimeMillis() - startMillis, budgetExceeded);
+            CacheStats warmedStats = pinLookupCache.pinStats();
+            hitRatePublisher.schedule(() -> publishHitRate(warmedStats), HIT_RATE_WINDOW_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hitRatePublisher.shutdownNow();
+    }
+
+    /**
+     * @return whether every task finished within the budget, tasks still running once it ran out are cancelled
+     */
+    private static boolean runWithin(List<Runnable> tasks, long budgetSeconds) throws InterruptedException {
+        if (tasks.isEmpty()) {
+            return true;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(WARM_UP_PARALLELISM,
+                new ThreadFactoryBuilder().setNameFormat("join-path-warmer-%d").setDaemon(true).build());
+        try {
+            CompletableFuture.allOf(tasks.stream()
+                            .map(task -> CompletableFuture.runAsync(task, executor))
+                            .toArray(CompletableFuture[]::new))
+                    .get(budgetSeconds, TimeUnit.SECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            log.warn("Join path warm-up failed", e.getCause());
+            return true;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Conference> loadUpcomingConferences(long nowMillis) {
+        try {
+            return conferenceDao.loadStartingBetween(new Date(nowMillis),
+                    new Date(nowMillis + TimeUnit.MINUTES.toMillis(UPCOMING_WINDOW_MINUTES)));
+        } catch (RuntimeException e) {
+            log.warn("Unable to load upcoming conferences for warm-up", e);
+            return Collections.emptyList();
+        }
+    }
+
+    private List<String> loadHotCodes() {
+        try {
+            return pinDao.loadMostJoinedCodes(HOT_CODES);
+        } catch (RuntimeException e) {
+            log.warn("Unable to load hot codes for warm-up", e);
+            return Collections.emptyList();
+        }
+    }
+
+    private void warmWaitingRoom(Conference conference) {
+        try {
+            waitingRoomCache.loadWaitingRoom(conference);
+        } catch (RuntimeException e) {
+            log.debug("Unable to warm waiting room of conference {}", conference.getId(), e);
+        }
+    }
+
+    private Pin warmPin(String code) {
+        attempted.increment();
+        try {
+            Pin pin = pinHandler.findConferencePin(code);
+            loaded.increment();
+            return pin;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void publish(long durationMillis, boolean budgetExceeded) {
+        long attemptedCount = attempted.sum();
+        long loadedCount = loaded.sum();
+        serviceMetricsPublisher.publish("JoinPathWarmer", metrics -> {
+            metrics.addTime("JoinPathWarmer:Duration", durationMillis, SI.MILLI(SI.SECOND));
+            metrics.addCount("JoinPathWarmer:Attempted", attemptedCount, Unit.ONE);
+            metrics.addCount("JoinPathWarmer:Loaded", loadedCount, Unit.ONE);
+            metrics.addCount("JoinPathWarmer:BudgetExceeded", budgetExceeded ? 1 : 0, Unit.ONE);
+        });
+        log.info("Join path warm-up loaded {} of {} codes in {} ms, budget exceeded: {}", loadedCount,
+                attemptedCount, durationMillis, budgetExceeded);
+    }
+
+    @VisibleForTesting
+    void publishHitRate(CacheStats warmedStats) {
+        CacheStats window = pinLookupCache.pinStats().minus(warmedStats);
+        if (window.requestCount() == 0) {
+            return;
+        }
+        serviceMetricsPublisher.publish("JoinPathWarmer", metrics -> {
+            metrics.addCount("JoinPathWarmer:HitRate", window.hitRate(), Unit.ONE);
+            metrics.addCount("JoinPathWarmer:Lookups", window.requestCount(), Unit.ONE);
+        });
+    }
+}
@@ -0,0 +1,125 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazon.coral.metrics.Metrics;
+import com.amazonaws.ucbuzzccp.NotFoundException;
+import com.amazonaws.ucbuzzccp.dao.ConferenceDao;
+import com.amazonaws.ucbuzzccp.dao.PinDao;
+import com.amazonaws.ucbuzzccp.dao.model.Conference;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.measure.unit.Unit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class JoinPathWarmerTest {
+    private static final String CONFERENCE_PASSCODE = "1234567890";
+    private static final String MISSING_PASSCODE = "1111111111";
+    private static final String HOT_CODE = "0987654321";
+    private static final Conference CONFERENCE = Conference.builder()
+            .id("conference-id")
+            .passcode(CONFERENCE_PASSCODE)
+            .build();
+    private static final Conference CONFERENCE_WITHOUT_PIN = Conference.builder()
+            .id("conference-without-pin")
+            .passcode(MISSING_PASSCODE)
+            .build();
+    private static final Pin PIN = Pin.builder().code(CONFERENCE_PASSCODE).build();
+
+    @Mock
+    private ConferenceDao conferenceDao;
+    @Mock
+    private PinDao pinDao;
+    @Mock
+    private PinHandler pinHandler;
+    @Mock
+    private WaitingRoomCache waitingRoomCache;
+    @Mock
+    private ServiceMetricsPublisher serviceMetricsPublisher;
+    @Mock
+    private ScheduledExecutorService hitRatePublisher;
+    @Mock
+    private Metrics metrics;
+
+    private final PinLookupCache pinLookupCache = new PinLookupCache();
+    private JoinPathWarmer joinPathWarmer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        doAnswer(invocation -> {
+            ((Consumer<Metrics>) invocation.getArguments()[1]).accept(metrics);
+            return null;
+        }).when(serviceMetricsPublisher).publish(anyString(), any(Consumer.class));
+        when(conferenceDao.loadStartingBetween(any(Date.class), any(Date.class)))
+                .thenReturn(Arrays.asList(CONFERENCE, CONFERENCE_WITHOUT_PIN));
+        when(pinDao.loadMostJoinedCodes(anyInt())).thenReturn(Collections.singletonList(HOT_CODE));
+        when(pinHandler.findConferencePin(CONFERENCE_PASSCODE)).thenReturn(PIN);
+        when(pinHandler.findConferencePin(MISSING_PASSCODE)).thenThrow(new NotFoundException("not found"));
+        joinPathWarmer = new JoinPathWarmer(conferenceDao, pinDao, pinHandler, pinLookupCache, waitingRoomCache,
+                serviceMetricsPublisher, hitRatePublisher);
+    }
+
+    @Test
+    public void testConstructionDoesNotWarmUp() {
+        verify(conferenceDao, never()).loadStartingBetween(any(Date.class), any(Date.class));
+        verify(pinHandler, never()).findConferencePin(anyString());
+    }
+
+    @Test
+    public void testWarmUpOnlyReads() {
+        joinPathWarmer.warmUp();
+
+        verify(pinHandler).findConferencePin(CONFERENCE_PASSCODE);
+        verify(pinHandler).findConferencePin(MISSING_PASSCODE);
+        verify(pinHandler).findConferencePin(HOT_CODE);
+        verify(waitingRoomCache).loadWaitingRoom(CONFERENCE);
+        verify(waitingRoomCache, never()).loadWaitingRoom(CONFERENCE_WITHOUT_PIN);
+        verify(waitingRoomCache, never()).getOrCreateWaitingRoom(any(Pin.class), any(Conference.class));
+    }
+
+    @Test
+    public void testWarmUpSurvivesFailingLoads() {
+        when(conferenceDao.loadStartingBetween(any(Date.class), any(Date.class)))
+                .thenThrow(new IllegalStateException("Injected scan failure"));
+
+        joinPathWarmer.warmUp();
+
+        verify(pinHandler).findConferencePin(HOT_CODE);
+    }
+
+    @Test
+    public void testHitRateCountsPinCacheHitsAfterWarmUp() {
+        joinPathWarmer.warmUp();
+        ArgumentCaptor<Runnable> hitRate = ArgumentCaptor.forClass(Runnable.class);
+        verify(hitRatePublisher).schedule(hitRate.capture(), eq(JoinPathWarmer.HIT_RATE_WINDOW_SECONDS),
+                eq(TimeUnit.SECONDS));
+
+        pinLookupCache.find(CONFERENCE_PASSCODE, code -> PIN);
+        pinLookupCache.find(CONFERENCE_PASSCODE, code -> PIN);
+        hitRate.getValue().run();
+
+        verify(metrics).addCount(eq("JoinPathWarmer:HitRate"), eq(0.5), eq(Unit.ONE));
+    }
+}
@@ -0,0 +1,80 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms of the stages of a V3 join.
+ *
+ * Callers take {@link System#nanoTime()} before a stage and pass it to {@link #record} after it. Percentiles of
+ * every stage are published through {@link ServiceMetricsPublisher} once per publish interval.
+ */
+public class JoinStageLatencies {
+    @VisibleForTesting
+    static final long PUBLISH_INTERVAL_SECONDS = 60;
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public enum Stage {
+        PasscodeParse,
+        AliasResolution,
+        PinFetch,
+        AllowlistEvaluation,
+        GetOrCreateWaitingRoom,
+        AccessRequestInsert
+    }
+
+    private final ServiceMetricsPublisher serviceMetricsPublisher;
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+    private final ScheduledExecutorService publisher;
+
+    @Inject
+    public JoinStageLatencies(ServiceMetricsPublisher serviceMetricsPublisher) {
+        this.serviceMetricsPublisher = serviceMetricsPublisher;
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+        this.publisher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("join-stage-latency-publisher").setDaemon(true).build());
+        this.publisher.scheduleAtFixedRate(this::publish, PUBLISH_INTERVAL_SECONDS, PUBLISH_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    public void record(Stage stage, long startNanos) {
+        histograms.get(stage).record(System.nanoTime() - startNanos);
+    }
+
+    @VisibleForTesting
+    void publish() {
+        serviceMetricsPublisher.publish("JoinStageLatencies", metrics -> {
+            for (Map.Entry<Stage, LatencyHistogram> entry : histograms.entrySet()) {
+                LatencyHistogram.Snapshot snapshot = entry.getValue().snapshotAndReset();
+                if (snapshot.count() == 0) {
+                    continue;
+                }
+                String name = "JoinStage:" + entry.getKey().name();
+                metrics.addCount(name + ":Count", snapshot.count(), Unit.ONE);
+                metrics.addTime(name + ":p50", snapshot.percentile(0.5) / NANOS_PER_MILLI, SI.MILLI(SI.SECOND));
+                metrics.addTime(name + ":p99", snapshot.percentile(0.99) / NANOS_PER_MILLI, SI.MILLI(SI.SECOND));
+                metrics.addTime(name + ":p999", snapshot.percentile(0.999) / NANOS_PER_MILLI,
+                        SI.MILLI(SI.SECOND));
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        publisher.shutdown();
+    }
+}
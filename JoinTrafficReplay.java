@@ -0,0 +1,171 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.benchmark;
+
+import com.amazonaws.ucbuzzccp.dao.model.Conference;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.dao.model.PinType;
+import com.amazonaws.ucbuzzccp.helper.LatencyHistogram;
+import com.amazonaws.ucbuzzccp.helper.PasscodeKind;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Replays a mix of conference, attendee and dial-in passcodes through the V3 join path on top of
+ * {@link JoinPathFakes} and reports joins per second, latency percentiles and remote calls per join.
+ *
+ * Usage: {@code JoinTrafficReplay <threads> <seconds> <remoteLatencyMicros> <remoteErrorRate> [passcodeFile]}.
+ * Without a passcode file a synthetic mix is generated. Conference passcodes are joined anonymously through
+ * {@code AnonymousSessionV3Handler}, attendee passcodes through {@code findAttendeePin} and dial-in passcodes
+ * through {@code findConferencePin}.
+ */
+@Slf4j
+public class JoinTrafficReplay {
+    private static final int SYNTHETIC_CONFERENCES = 1_000;
+    private static final int SYNTHETIC_ATTENDEES_PER_CONFERENCE = 20;
+    private static final int SYNTHETIC_PASSCODES = 100_000;
+    private static final double SYNTHETIC_ATTENDEE_SHARE = 0.3;
+    private static final double SYNTHETIC_DIAL_IN_SHARE = 0.1;
+    private static final double SYNTHETIC_UNKNOWN_SHARE = 0.05;
+    private static final String ORGANIZER_PROFILE_ID = "organizer-profile-id";
+
+    private final JoinPathFakes fakes;
+    private final JoinPathFixture fixture;
+    private final Map<String, Conference> conferences = new ConcurrentHashMap<>();
+
+    public JoinTrafficReplay(JoinPathFakes fakes) {
+        this.fakes = fakes;
+        this.fixture = new JoinPathFixture(fakes);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.parseInt(args[0]);
+        long seconds = Long.parseLong(args[1]);
+        JoinPathFakes fakes = new JoinPathFakes(Long.parseLong(args[2]), Double.parseDouble(args[3]));
+        JoinTrafficReplay replay = new JoinTrafficReplay(fakes);
+        List<String> passcodes = replay.seed(new Random(42));
+        if (args.length > 4) {
+            passcodes = replay.load(args[4]);
+        }
+        try {
+            replay.run(passcodes, threads, seconds);
+        } finally {
+            replay.fixture.shutdown();
+        }
+    }
+
+    /**
+     * Create the synthetic pin population and return a passcode mix that hits it.
+     */
+    List<String> seed(Random random) {
+        List<String> conferencePasscodes = new ArrayList<>();
+        List<String> attendeePasscodes = new ArrayList<>();
+        for (int i = 0; i < SYNTHETIC_CONFERENCES; i++) {
+            String passcode = String.valueOf(1_000_000_000L + i);
+            fakes.addPin(Pin.builder()
+                    .code(passcode)
+                    .type(PinType.Conference.name())
+                    .profileId(ORGANIZER_PROFILE_ID)
+                    .belongsToEntityId(ORGANIZER_PROFILE_ID)
+                    .build());
+            conferencePasscodes.add(passcode);
+            for (int j = 0; j < SYNTHETIC_ATTENDEES_PER_CONFERENCE; j++) {
+                String attendeePasscode = passcode + (100 + j);
+                fakes.addPin(Pin.builder().code(attendeePasscode).type(PinType.Attendee.name()).build());
+                attendeePasscodes.add(attendeePasscode);
+            }
+        }
+
+        List<String> passcodes = new ArrayList<>(SYNTHETIC_PASSCODES);
+        for (int i = 0; i < SYNTHETIC_PASSCODES; i++) {
+            double draw = random.nextDouble();
+            String conferencePasscode = conferencePasscodes.get(random.nextInt(conferencePasscodes.size()));
+            if (draw < SYNTHETIC_UNKNOWN_SHARE) {
+                passcodes.add(String.valueOf(9_000_000_000L + random.nextInt(1_000_000_000)));
+            } else if (draw < SYNTHETIC_UNKNOWN_SHARE + SYNTHETIC_DIAL_IN_SHARE) {
+                passcodes.add(conferencePasscode + (10_000 + random.nextInt(90_000)));
+            } else if (draw < SYNTHETIC_UNKNOWN_SHARE + SYNTHETIC_DIAL_IN_SHARE + SYNTHETIC_ATTENDEE_SHARE) {
+                passcodes.add(attendeePasscodes.get(random.nextInt(attendeePasscodes.size())));
+            } else {
+                passcodes.add(conferencePasscode);
+            }
+        }
+        return passcodes;
+    }
+
+    List<String> load(String passcodeFile) throws IOException {
+        return Files.readAllLines(Paths.get(passcodeFile)).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    void run(List<String> passcodes, int threads, long seconds) throws InterruptedException {
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder joins = new LongAdder();
+        LongAdder failures = new LongAdder();
+        AtomicInteger next = new AtomicInteger();
+        long remoteCallsBefore = fakes.getRemoteCalls().sum();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    String passcode = passcodes.get(Math.floorMod(next.getAndIncrement(), passcodes.size()));
+                    long start = System.nanoTime();
+                    try {
+                        join(passcode);
+                    } catch (RuntimeException e) {
+                        failures.increment();
+                    }
+                    latencies.record(System.nanoTime() - start);
+                    joins.increment();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+
+        LatencyHistogram.Snapshot snapshot = latencies.snapshotAndReset();
+        long remoteCalls = fakes.getRemoteCalls().sum() - remoteCallsBefore;
+        log.info("threads={} joins={} joinsPerSecond={} failures={} p50Micros={} p99Micros={} p999Micros={} "
+                        + "remoteCallsPerJoin={}",
+                threads, joins.sum(), joins.sum() / seconds, failures.sum(),
+                TimeUnit.NANOSECONDS.toMicros(snapshot.percentile(0.5)),
+                TimeUnit.NANOSECONDS.toMicros(snapshot.percentile(0.99)),
+                TimeUnit.NANOSECONDS.toMicros(snapshot.percentile(0.999)),
+                joins.sum() == 0 ? 0 : (double) remoteCalls / joins.sum());
+    }
+
+    private void join(String passcode) {
+        switch (PasscodeKind.classify(passcode)) {
+        case ATTENDEE:
+            fixture.getV3MeetingExperienceHelper().findAttendeePin(passcode);
+            break;
+        case DIAL_IN:
+            fixture.getV3MeetingExperienceHelper().findConferencePin(passcode);
+            break;
+        default:
+            Conference conference = conferences.computeIfAbsent(passcode,
+                    code -> Conference.builder().id("conference-" + code).passcode(code).build());
+            fixture.getAnonymousSessionV3Handler().insertAccessRequestIntoWaitingRoom(
+                    passcode, conference, "anonymous-profile-id", "device-id", "device-platform", "display-name",
+                    "aws-account-id");
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+
+        assertEquals(1000, snapshot.count());
+        assertWithin(500_000, snapshot.percentile(0.5));
+        assertWithin(990_000, snapshot.percentile(0.99));
+        assertWithin(999_000, snapshot.percentile(0.999));
+    }
+
+    @Test
+    public void testSnapshotResetsCounts() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        assertEquals(1, histogram.snapshotAndReset().count());
+
+        LatencyHistogram.Snapshot empty = histogram.snapshotAndReset();
+        assertEquals(0, empty.count());
+        assertEquals(0, empty.percentile(0.99));
+    }
+
+    @Test
+    public void testBucketBoundaries() {
+        for (long value : new long[] {0, 1, 7, 8, 9, 15, 16, 1023, 1024, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.lowerBound(bucket) <= value);
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 8);
+    }
+}
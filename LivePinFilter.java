@@ -0,0 +1,236 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.PinDao;
+import com.amazonaws.ucbuzzccp.helper.DynamicConfigSnapshot;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.measure.unit.NonSI;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Bloom filter of the codes of every live pin, telling a lookup whether the code is probably not a live pin.
+ *
+ * The filter is built in the background from a scan of the pin table and rebuilt every rebuild interval while
+ * {@link #SDC_LIVE_PIN_FILTER} is on, with the flag off neither the scan nor the filter exist. Pins created on this
+ * host are added as they are created and pins expired or reclaimed on this host are reported as not live until the
+ * next rebuild drops them. Aliases are resolved before the filter is consulted, repointing an alias creates and
+ * retires the pins it points at, so aliases need no entries of their own.
+ *
+ * Between rebuilds the filter catches up every catch-up interval with the pins created since the last catch-up on
+ * any host, so a miss is authoritative: callers treat a code reported as not live as not found without reading the
+ * DAO. A pin created on another host can therefore be reported as not live for up to a catch-up interval plus the
+ * duration of a catch-up, never longer than the maximum catch-up age, which matches the negative TTL of
+ * {@link PinLookupCache}. Pins retired on other hosts stay in the filter until the next rebuild, which only costs a
+ * read. Until the first build, once the last catch-up is older than the maximum catch-up age, or once the filter is
+ * older than the maximum staleness, every code is reported as possibly live. The DAO reads saved are published as
+ * LivePinFilter:Misses.
+ */
+@Slf4j
+public class LivePinFilter {
+    public static final String SDC_LIVE_PIN_FILTER = "LivePinFilter";
+
+    @VisibleForTesting
+    static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    @VisibleForTesting
+    static final long DEFAULT_REBUILD_INTERVAL_MINUTES = 5;
+    // headroom for pins created between two rebuilds
+    private static final double EXPECTED_GROWTH = 1.2;
+    private static final int MINIMUM_EXPECTED_INSERTIONS = 10_000;
+    @VisibleForTesting
+    static final long CATCH_UP_INTERVAL_SECONDS = 2;
+    @VisibleForTesting
+    static final long MAXIMUM_CATCH_UP_AGE_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    // covers clock skew between hosts and writes still in flight when the previous catch-up read
+    private static final long CATCH_UP_OVERLAP_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final PinDao pinDao;
+    private final DynamicConfigSnapshot dynamicConfigSnapshot;
+    private final ServiceMetricsPublisher serviceMetricsPublisher;
+    private final double falsePositiveRate;
+    private final long maximumStalenessMillis;
+    private final LongSupplier clockMillis;
+    private final ScheduledExecutorService rebuilder;
+    private final LongAdder misses = new LongAdder();
+    private volatile BloomFilter<CharSequence> filter;
+    private volatile Set<String> createdSinceRebuild = ConcurrentHashMap.newKeySet();
+    private volatile Set<String> retiredSinceRebuild = ConcurrentHashMap.newKeySet();
+    private volatile long builtAtMillis;
+    private volatile long caughtUpAtMillis;
+    private volatile long footprintBytes;
+
+    @Inject
+    public LivePinFilter(PinDao pinDao, DynamicConfigSnapshot dynamicConfigSnapshot,
+            ServiceMetricsPublisher serviceMetricsPublisher) {
+        this(pinDao, dynamicConfigSnapshot, serviceMetricsPublisher, DEFAULT_FALSE_POSITIVE_RATE,
+                DEFAULT_REBUILD_INTERVAL_MINUTES, System::currentTimeMillis, Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder().setNameFormat("live-pin-filter").setDaemon(true).build()));
+    }
+
+    @VisibleForTesting
+    LivePinFilter(PinDao pinDao, DynamicConfigSnapshot dynamicConfigSnapshot,
+            ServiceMetricsPublisher serviceMetricsPublisher, double falsePositiveRate, long rebuildIntervalMinutes,
+            LongSupplier clockMillis, ScheduledExecutorService rebuilder) {
+        this.pinDao = pinDao;
+        this.dynamicConfigSnapshot = dynamicConfigSnapshot;
+        this.serviceMetricsPublisher = serviceMetricsPublisher;
+        this.falsePositiveRate = falsePositiveRate;
+        this.maximumStalenessMillis = TimeUnit.MINUTES.toMillis(3 * rebuildIntervalMinutes);
+        this.clockMillis = clockMillis;
+        this.rebuilder = rebuilder;
+        // both run on the single rebuilder thread, a catch-up never races a rebuild
+        this.rebuilder.scheduleWithFixedDelay(this::rebuildIfEnabled, 0, rebuildIntervalMinutes, TimeUnit.MINUTES);
+        this.rebuilder.scheduleWithFixedDelay(this::catchUpIfEnabled, CATCH_UP_INTERVAL_SECONDS,
+                CATCH_UP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public boolean isEnabled() {
+        return dynamicConfigSnapshot.getBooleanUncached(SDC_LIVE_PIN_FILTER, false);
+    }
+
+    /**
+     * @return false if the code is not a live pin, in which case the caller needs no DAO read to know it
+     */
+    public boolean mightBeLive(@NonNull String code) {
+        BloomFilter<CharSequence> current = filter;
+        if (current == null || !isEnabled()) {
+            return true;
+        }
+        long nowMillis = clockMillis.getAsLong();
+        if (nowMillis - caughtUpAtMillis > MAXIMUM_CATCH_UP_AGE_MILLIS
+                || nowMillis - builtAtMillis > maximumStalenessMillis) {
+            return true;
+        }
+        if (createdSinceRebuild.contains(code)
+                || !retiredSinceRebuild.contains(code) && current.mightContain(code)) {
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Record a pin created on this host, or on another host and read by the last catch-up.
+     */
+    public void put(@NonNull String code) {
+        retiredSinceRebuild.remove(code);
+        createdSinceRebuild.add(code);
+        BloomFilter<CharSequence> current = filter;
+        if (current != null) {
+            current.put(code);
+        }
+    }
+
+    /**
+     * Record a pin expired or reclaimed on this host.
+     */
+    public void retire(@NonNull String code) {
+        createdSinceRebuild.remove(code);
+        retiredSinceRebuild.add(code);
+    }
+
+    public long footprintBytes() {
+        return footprintBytes;
+    }
+
+    @VisibleForTesting
+    void rebuildIfEnabled() {
+        if (isEnabled()) {
+            rebuild();
+        } else if (filter != null) {
+            filter = null;
+            footprintBytes = 0;
+            caughtUpAtMillis = 0;
+            createdSinceRebuild = ConcurrentHashMap.newKeySet();
+            retiredSinceRebuild = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    @VisibleForTesting
+    void catchUpIfEnabled() {
+        if (filter == null || !isEnabled()) {
+            return;
+        }
+        try {
+            long startMillis = clockMillis.getAsLong();
+            List<String> codes = pinDao.loadActiveCodesCreatedSince(
+                    new Date(caughtUpAtMillis - CATCH_UP_OVERLAP_MILLIS));
+            codes.forEach(this::put);
+            caughtUpAtMillis = startMillis;
+        } catch (RuntimeException e) {
+            log.warn("Unable to catch up live pin filter, misses are hints until the next catch-up", e);
+            serviceMetricsPublisher.publish("LivePinFilter",
+                    metrics -> metrics.addCount("LivePinFilter:CatchUpFailure", 1, Unit.ONE));
+        }
+    }
+
+    @VisibleForTesting
+    void rebuild() {
+        try {
+            long startMillis = clockMillis.getAsLong();
+            Set<String> created = ConcurrentHashMap.newKeySet();
+            Set<String> previouslyCreated = createdSinceRebuild;
+            createdSinceRebuild = created;
+            Set<String> retired = ConcurrentHashMap.newKeySet();
+            Set<String> previouslyRetired = retiredSinceRebuild;
+            retiredSinceRebuild = retired;
+            // pins created or retired while the scan runs may be missed by it, keep them until the next rebuild
+            created.addAll(previouslyCreated);
+            retired.addAll(previouslyRetired);
+
+            List<String> codes = pinDao.loadAllActiveCodes();
+            int expectedInsertions = Math.max(MINIMUM_EXPECTED_INSERTIONS, (int) (codes.size() * EXPECTED_GROWTH));
+            BloomFilter<CharSequence> built = BloomFilter.create(
+                    Funnels.stringFunnel(StandardCharsets.UTF_8), expectedInsertions, falsePositiveRate);
+            codes.forEach(built::put);
+            filter = built;
+            builtAtMillis = startMillis;
+            caughtUpAtMillis = startMillis;
+            footprintBytes = optimalBits(expectedInsertions, falsePositiveRate) / Byte.SIZE;
+            created.removeAll(previouslyCreated);
+            retired.removeAll(previouslyRetired);
+
+            long buildTimeMillis = clockMillis.getAsLong() - startMillis;
+            serviceMetricsPublisher.publish("LivePinFilter", metrics -> {
+                metrics.addCount("LivePinFilter:Entries", codes.size(), Unit.ONE);
+                metrics.addCount("LivePinFilter:FootprintBytes", footprintBytes, NonSI.BYTE);
+                metrics.addCount("LivePinFilter:Misses", misses.sumThenReset(), Unit.ONE);
+                metrics.addTime("LivePinFilter:BuildTime", buildTimeMillis, SI.MILLI(SI.SECOND));
+            });
+            log.info("Built live pin filter of {} pins, estimated footprint {} bytes", codes.size(), footprintBytes);
+        } catch (RuntimeException e) {
+            log.warn("Unable to rebuild live pin filter", e);
+            serviceMetricsPublisher.publish("LivePinFilter",
+                    metrics -> metrics.addCount("LivePinFilter:RebuildFailure", 1, Unit.ONE));
+        }
+    }
+
+    private static long optimalBits(long expectedInsertions, double falsePositiveRate) {
+        return (long) (-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdown();
+    }
+}
@@ -0,0 +1,102 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.PinDao;
+import com.amazonaws.ucbuzzccp.helper.DynamicConfigSnapshot;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LivePinFilterTest {
+    private static final String LIVE_PIN = "1234567890";
+    private static final String UNKNOWN_PIN = "0987654321";
+
+    @Mock
+    private PinDao pinDao;
+    @Mock
+    private DynamicConfigSnapshot dynamicConfigSnapshot;
+    @Mock
+    private ServiceMetricsPublisher serviceMetricsPublisher;
+    @Mock
+    private ScheduledExecutorService rebuilder;
+
+    private final AtomicLong clockMillis = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+    private LivePinFilter livePinFilter;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(dynamicConfigSnapshot.getBooleanUncached(LivePinFilter.SDC_LIVE_PIN_FILTER, false)).thenReturn(true);
+        when(pinDao.loadAllActiveCodes()).thenReturn(Collections.singletonList(LIVE_PIN));
+        livePinFilter = new LivePinFilter(pinDao, dynamicConfigSnapshot, serviceMetricsPublisher,
+                LivePinFilter.DEFAULT_FALSE_POSITIVE_RATE, LivePinFilter.DEFAULT_REBUILD_INTERVAL_MINUTES,
+                clockMillis::get, rebuilder);
+    }
+
+    @Test
+    public void testEveryCodeMightBeLiveBeforeFirstBuild() {
+        assertTrue(livePinFilter.mightBeLive(UNKNOWN_PIN));
+    }
+
+    @Test
+    public void testPinCreatedElsewhereIsLearnedByCatchUp() {
+        livePinFilter.rebuildIfEnabled();
+        assertTrue(livePinFilter.mightBeLive(LIVE_PIN));
+        assertFalse(livePinFilter.mightBeLive(UNKNOWN_PIN));
+
+        when(pinDao.loadActiveCodesCreatedSince(any(Date.class))).thenReturn(Collections.singletonList(UNKNOWN_PIN));
+        clockMillis.addAndGet(TimeUnit.SECONDS.toMillis(LivePinFilter.CATCH_UP_INTERVAL_SECONDS));
+        livePinFilter.catchUpIfEnabled();
+        assertTrue(livePinFilter.mightBeLive(UNKNOWN_PIN));
+    }
+
+    @Test
+    public void testMissIsNotTrustedOnceCatchUpIsTooOld() {
+        livePinFilter.rebuildIfEnabled();
+        when(pinDao.loadActiveCodesCreatedSince(any(Date.class))).thenThrow(new IllegalStateException("throttled"));
+
+        clockMillis.addAndGet(LivePinFilter.MAXIMUM_CATCH_UP_AGE_MILLIS);
+        livePinFilter.catchUpIfEnabled();
+        assertFalse(livePinFilter.mightBeLive(UNKNOWN_PIN));
+
+        clockMillis.incrementAndGet();
+        assertTrue(livePinFilter.mightBeLive(UNKNOWN_PIN));
+    }
+
+    @Test
+    public void testRetiredPinIsNotLiveUntilCreatedAgain() {
+        livePinFilter.rebuildIfEnabled();
+
+        livePinFilter.retire(LIVE_PIN);
+        assertFalse(livePinFilter.mightBeLive(LIVE_PIN));
+
+        livePinFilter.put(LIVE_PIN);
+        assertTrue(livePinFilter.mightBeLive(LIVE_PIN));
+    }
+
+    @Test
+    public void testNoScanWhileDisabled() {
+        when(dynamicConfigSnapshot.getBooleanUncached(LivePinFilter.SDC_LIVE_PIN_FILTER, false)).thenReturn(false);
+
+        livePinFilter.rebuildIfEnabled();
+
+        verify(pinDao, never()).loadAllActiveCodes();
+        assertTrue(livePinFilter.mightBeLive(UNKNOWN_PIN));
+    }
+}
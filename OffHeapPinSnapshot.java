@@ -0,0 +1,247 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.PinDao;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.helper.DynamicConfigSnapshot;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.measure.unit.NonSI;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Pins of the latest {@link OffHeapPinStore} snapshot, consulted by {@link PinHandler} before the DAO.
+ *
+ * Every host writes its own snapshot: every snapshot interval all active pins are read from {@link PinDao} and
+ * written with {@link OffHeapPinStore#writeSnapshot}, stamped with the time the read started, and the snapshot path
+ * is replaced atomically. The snapshot is mapped at startup and remapped in the background whenever the file
+ * changes, so a host restarted within the snapshot interval serves the snapshot it wrote before.
+ *
+ * Pins changed on this host since the snapshot was written are invalidated through {@link #invalidate}. Pins changed
+ * on other hosts are invalidated by a catch-up every few seconds that reads the codes changed since the previous
+ * one. Invalidated pins are read from the DAO, as are pins whose deactivateOn date has passed. The snapshot is only
+ * served while the last catch-up is at most the pin cache TTL old, so a pin expired or reclaimed elsewhere is served
+ * for no longer than {@link PinLookupCache} serves it anyway. Only used while {@link #SDC_OFF_HEAP_PIN_STORE} is on.
+ */
+@Slf4j
+public class OffHeapPinSnapshot {
+    public static final String SDC_OFF_HEAP_PIN_STORE = "OffHeapPinStore";
+
+    @VisibleForTesting
+    static final Path DEFAULT_SNAPSHOT_PATH = Paths.get("/var/cache/ucbuzzccp/pins.snapshot");
+    @VisibleForTesting
+    static final long RELOAD_INTERVAL_MINUTES = 5;
+    @VisibleForTesting
+    static final long SNAPSHOT_INTERVAL_MINUTES = 60;
+    @VisibleForTesting
+    static final long MAXIMUM_AGE_MILLIS = TimeUnit.MINUTES.toMillis(3 * SNAPSHOT_INTERVAL_MINUTES);
+    @VisibleForTesting
+    static final long CATCH_UP_INTERVAL_SECONDS = 5;
+    // the pin cache TTL, a change made elsewhere is served from the snapshot no longer than from the pin cache
+    @VisibleForTesting
+    static final long MAXIMUM_CATCH_UP_AGE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // read back a little before the previous catch-up, so a change committed late with an earlier date is not missed
+    private static final long CATCH_UP_OVERLAP_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final Path snapshotPath;
+    private final PinDao pinDao;
+    private final DynamicConfigSnapshot dynamicConfigSnapshot;
+    private final ServiceMetricsPublisher serviceMetricsPublisher;
+    private final LongSupplier clockMillis;
+    private final ScheduledExecutorService reloader;
+    private final ScheduledExecutorService writer;
+    // code -> time it was known changed by, dropped once a snapshot written after the change is loaded
+    private final Map<String, Long> invalidated = new ConcurrentHashMap<>();
+    private volatile OffHeapPinStore store;
+    private volatile long writtenAtMillis;
+    // every change made before this time is invalidated or part of the snapshot
+    private volatile long caughtUpAtMillis;
+
+    @Inject
+    public OffHeapPinSnapshot(PinDao pinDao, DynamicConfigSnapshot dynamicConfigSnapshot,
+            ServiceMetricsPublisher serviceMetricsPublisher) {
+        this(DEFAULT_SNAPSHOT_PATH, pinDao, dynamicConfigSnapshot, serviceMetricsPublisher, System::currentTimeMillis,
+                Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder().setNameFormat("off-heap-pin-snapshot").setDaemon(true).build()),
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                        .setNameFormat("off-heap-pin-snapshot-writer").setDaemon(true).build()));
+    }
+
+    @VisibleForTesting
+    OffHeapPinSnapshot(Path snapshotPath, PinDao pinDao, DynamicConfigSnapshot dynamicConfigSnapshot,
+            ServiceMetricsPublisher serviceMetricsPublisher, LongSupplier clockMillis,
+            ScheduledExecutorService reloader, ScheduledExecutorService writer) {
+        this.snapshotPath = snapshotPath;
+        this.pinDao = pinDao;
+        this.dynamicConfigSnapshot = dynamicConfigSnapshot;
+        this.serviceMetricsPublisher = serviceMetricsPublisher;
+        this.clockMillis = clockMillis;
+        this.reloader = reloader;
+        this.writer = writer;
+    }
+
+    /**
+     * Maps the snapshot and catches up with the pins changed since it was written before the host takes traffic,
+     * then keeps it current in the background. A new snapshot is written right away unless the mapped one is younger
+     * than the snapshot interval.
+     */
+    @PostConstruct
+    public void start() {
+        reloadIfEnabled();
+        catchUpIfEnabled();
+        reloader.scheduleWithFixedDelay(this::reloadIfEnabled, RELOAD_INTERVAL_MINUTES, RELOAD_INTERVAL_MINUTES,
+                TimeUnit.MINUTES);
+        reloader.scheduleWithFixedDelay(this::catchUpIfEnabled, CATCH_UP_INTERVAL_SECONDS, CATCH_UP_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+        long snapshotIntervalMillis = TimeUnit.MINUTES.toMillis(SNAPSHOT_INTERVAL_MINUTES);
+        long firstWriteMillis = store == null ? 0
+                : Math.max(0, snapshotIntervalMillis - (clockMillis.getAsLong() - writtenAtMillis));
+        writer.scheduleWithFixedDelay(this::writeIfEnabled, firstWriteMillis, snapshotIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return dynamicConfigSnapshot.getBooleanUncached(SDC_OFF_HEAP_PIN_STORE, false);
+    }
+
+    /**
+     * @return the pin of the snapshot, null if the DAO must be read instead
+     */
+    public Pin find(@NonNull String code) {
+        OffHeapPinStore current = store;
+        long nowMillis = clockMillis.getAsLong();
+        if (current == null || !isEnabled() || nowMillis - writtenAtMillis > MAXIMUM_AGE_MILLIS
+                || nowMillis - caughtUpAtMillis > MAXIMUM_CATCH_UP_AGE_MILLIS || invalidated.containsKey(code)) {
+            return null;
+        }
+        Pin pin = current.find(code);
+        if (pin == null || pin.getDeactivateOn() != null && pin.getDeactivateOn().getTime() <= nowMillis) {
+            return null;
+        }
+        return pin;
+    }
+
+    /**
+     * Record a pin changed on this host, so the snapshot entry written before the change is no longer served.
+     */
+    public void invalidate(String code) {
+        if (code != null) {
+            invalidated.put(code, clockMillis.getAsLong());
+        }
+    }
+
+    @VisibleForTesting
+    void reloadIfEnabled() {
+        if (!isEnabled()) {
+            store = null;
+            caughtUpAtMillis = 0;
+            invalidated.clear();
+            return;
+        }
+        try {
+            if (!Files.exists(snapshotPath)) {
+                log.debug("No pin snapshot at {}", snapshotPath);
+                return;
+            }
+            long modifiedMillis = Files.getLastModifiedTime(snapshotPath).toMillis();
+            if (store != null && modifiedMillis == writtenAtMillis) {
+                if (clockMillis.getAsLong() - writtenAtMillis > MAXIMUM_AGE_MILLIS) {
+                    // the snapshot is no longer served, neither are the pins changed since it was written
+                    invalidated.clear();
+                }
+                return;
+            }
+            OffHeapPinStore loaded = OffHeapPinStore.load(snapshotPath);
+            // the catch-up runs on the same thread, every change made before the snapshot was written is in it
+            caughtUpAtMillis = Math.max(caughtUpAtMillis, modifiedMillis);
+            store = loaded;
+            writtenAtMillis = modifiedMillis;
+            invalidated.values().removeIf(changedAtMillis -> changedAtMillis < modifiedMillis);
+            serviceMetricsPublisher.publish("OffHeapPinSnapshot", metrics -> {
+                metrics.addCount("OffHeapPinSnapshot:Entries", loaded.size(), Unit.ONE);
+                metrics.addCount("OffHeapPinSnapshot:FootprintBytes", loaded.footprintBytes(), NonSI.BYTE);
+            });
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to load pin snapshot {}", snapshotPath, e);
+            serviceMetricsPublisher.publish("OffHeapPinSnapshot",
+                    metrics -> metrics.addCount("OffHeapPinSnapshot:LoadFailure", 1, Unit.ONE));
+        }
+    }
+
+    /**
+     * Invalidate the pins changed on any host since the previous catch-up.
+     */
+    @VisibleForTesting
+    void catchUpIfEnabled() {
+        long sinceMillis = caughtUpAtMillis;
+        if (store == null || sinceMillis == 0 || !isEnabled()) {
+            return;
+        }
+        try {
+            long startMillis = clockMillis.getAsLong();
+            List<String> changed = pinDao.loadCodesChangedSince(new Date(sinceMillis - CATCH_UP_OVERLAP_MILLIS));
+            // the changes were made by the time the read returned, possibly after it started
+            long changedByMillis = clockMillis.getAsLong();
+            changed.forEach(code -> invalidated.merge(code, changedByMillis, Math::max));
+            caughtUpAtMillis = startMillis;
+            serviceMetricsPublisher.publish("OffHeapPinSnapshot", metrics -> {
+                metrics.addCount("OffHeapPinSnapshot:CaughtUp", changed.size(), Unit.ONE);
+                metrics.addCount("OffHeapPinSnapshot:Invalidated", invalidated.size(), Unit.ONE);
+            });
+        } catch (RuntimeException e) {
+            log.warn("Unable to catch up pin snapshot, last caught up at {}", new Date(sinceMillis), e);
+            serviceMetricsPublisher.publish("OffHeapPinSnapshot",
+                    metrics -> metrics.addCount("OffHeapPinSnapshot:CatchUpFailure", 1, Unit.ONE));
+        }
+    }
+
+    /**
+     * Write a new snapshot of all active pins and map it.
+     */
+    @VisibleForTesting
+    void writeIfEnabled() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            // a pin changed while the pins are read may be missing from the snapshot, so it is stamped with the start
+            long startMillis = clockMillis.getAsLong();
+            OffHeapPinStore.build(pinDao.loadAllActive()).writeSnapshot(snapshotPath, startMillis);
+            long writeTimeMillis = clockMillis.getAsLong() - startMillis;
+            serviceMetricsPublisher.publish("OffHeapPinSnapshot",
+                    metrics -> metrics.addTime("OffHeapPinSnapshot:WriteTime", writeTimeMillis, SI.MILLI(SI.SECOND)));
+            reloader.execute(this::reloadIfEnabled);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to write pin snapshot {}", snapshotPath, e);
+            serviceMetricsPublisher.publish("OffHeapPinSnapshot",
+                    metrics -> metrics.addCount("OffHeapPinSnapshot:WriteFailure", 1, Unit.ONE));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloader.shutdown();
+        writer.shutdown();
+    }
+}
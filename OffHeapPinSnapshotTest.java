@@ -0,0 +1,156 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.PinDao;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.helper.DynamicConfigSnapshot;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class OffHeapPinSnapshotTest {
+    private static final long WRITTEN_AT_MILLIS = 1_600_000_000_000L;
+    private static final Pin PIN = Pin.builder().code("1234567890").profileId("profile-id").build();
+    private static final Pin DEACTIVATED_PIN = Pin.builder()
+            .code("0987654321")
+            .deactivateOn(new Date(WRITTEN_AT_MILLIS))
+            .build();
+    private static final Pin NEW_PIN = Pin.builder().code("1111111111").profileId("profile-id").build();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private PinDao pinDao;
+    @Mock
+    private DynamicConfigSnapshot dynamicConfigSnapshot;
+    @Mock
+    private ServiceMetricsPublisher serviceMetricsPublisher;
+    @Mock
+    private ScheduledExecutorService reloader;
+    @Mock
+    private ScheduledExecutorService writer;
+
+    private final AtomicLong clockMillis = new AtomicLong(WRITTEN_AT_MILLIS + 1_000);
+    private Path snapshotPath;
+    private OffHeapPinSnapshot offHeapPinSnapshot;
+
+    @Before
+    public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(dynamicConfigSnapshot.getBooleanUncached(OffHeapPinSnapshot.SDC_OFF_HEAP_PIN_STORE, false))
+                .thenReturn(true);
+        snapshotPath = temporaryFolder.getRoot().toPath().resolve("pins.snapshot");
+        OffHeapPinStore.build(Arrays.asList(PIN, DEACTIVATED_PIN)).writeSnapshot(snapshotPath);
+        Files.setLastModifiedTime(snapshotPath, FileTime.fromMillis(WRITTEN_AT_MILLIS));
+        offHeapPinSnapshot = new OffHeapPinSnapshot(snapshotPath, pinDao, dynamicConfigSnapshot,
+                serviceMetricsPublisher, clockMillis::get, reloader, writer);
+    }
+
+    @Test
+    public void testServesPinsOfSnapshotLoadedAtStart() {
+        offHeapPinSnapshot.start();
+
+        assertEquals(PIN, offHeapPinSnapshot.find(PIN.getCode()));
+        assertNull(offHeapPinSnapshot.find("1111111111"));
+        assertNull(offHeapPinSnapshot.find(DEACTIVATED_PIN.getCode()));
+    }
+
+    @Test
+    public void testInvalidatedPinIsReadUntilNewerSnapshot() throws Exception {
+        offHeapPinSnapshot.start();
+        offHeapPinSnapshot.invalidate(PIN.getCode());
+        assertNull(offHeapPinSnapshot.find(PIN.getCode()));
+
+        Files.setLastModifiedTime(snapshotPath, FileTime.fromMillis(clockMillis.addAndGet(1_000)));
+        offHeapPinSnapshot.reloadIfEnabled();
+        assertEquals(PIN, offHeapPinSnapshot.find(PIN.getCode()));
+    }
+
+    @Test
+    public void testPinChangedOnAnotherHostIsInvalidatedByCatchUp() {
+        offHeapPinSnapshot.start();
+        when(pinDao.loadCodesChangedSince(any(Date.class))).thenReturn(Collections.singletonList(PIN.getCode()));
+
+        offHeapPinSnapshot.catchUpIfEnabled();
+
+        assertNull(offHeapPinSnapshot.find(PIN.getCode()));
+    }
+
+    @Test
+    public void testSnapshotIsNotServedOnceCatchUpIsTooOld() {
+        offHeapPinSnapshot.start();
+        when(pinDao.loadCodesChangedSince(any(Date.class)))
+                .thenThrow(new IllegalStateException("Injected read failure"));
+        clockMillis.addAndGet(OffHeapPinSnapshot.MAXIMUM_CATCH_UP_AGE_MILLIS);
+        offHeapPinSnapshot.catchUpIfEnabled();
+        assertEquals(PIN, offHeapPinSnapshot.find(PIN.getCode()));
+
+        clockMillis.addAndGet(1);
+        assertNull(offHeapPinSnapshot.find(PIN.getCode()));
+    }
+
+    @Test
+    public void testWritesSnapshotStampedWithTimePinsWereRead() throws Exception {
+        offHeapPinSnapshot.start();
+        offHeapPinSnapshot.invalidate(PIN.getCode());
+        long readAtMillis = clockMillis.addAndGet(1_000);
+        when(pinDao.loadAllActive()).thenAnswer(invocation -> {
+            clockMillis.addAndGet(1_000);
+            return Arrays.asList(PIN, NEW_PIN);
+        });
+
+        offHeapPinSnapshot.writeIfEnabled();
+        offHeapPinSnapshot.reloadIfEnabled();
+
+        assertEquals(readAtMillis, Files.getLastModifiedTime(snapshotPath).toMillis());
+        assertEquals(NEW_PIN, offHeapPinSnapshot.find(NEW_PIN.getCode()));
+        assertEquals(PIN, offHeapPinSnapshot.find(PIN.getCode()));
+    }
+
+    @Test
+    public void testSnapshotOlderThanMaximumAgeIsNotServed() {
+        offHeapPinSnapshot.start();
+        clockMillis.addAndGet(OffHeapPinSnapshot.MAXIMUM_AGE_MILLIS);
+
+        assertNull(offHeapPinSnapshot.find(PIN.getCode()));
+    }
+
+    @Test
+    public void testNothingIsServedWhileDisabled() {
+        when(dynamicConfigSnapshot.getBooleanUncached(OffHeapPinSnapshot.SDC_OFF_HEAP_PIN_STORE, false))
+                .thenReturn(false);
+        offHeapPinSnapshot.start();
+
+        assertNull(offHeapPinSnapshot.find(PIN.getCode()));
+    }
+
+    @Test
+    public void testCorruptSnapshotIsNotServed() throws Exception {
+        Files.write(snapshotPath, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+        Files.setLastModifiedTime(snapshotPath, FileTime.fromMillis(WRITTEN_AT_MILLIS));
+
+        offHeapPinSnapshot.start();
+
+        assertNull(offHeapPinSnapshot.find(PIN.getCode()));
+    }
+}
@@ -0,0 +1,317 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Read-only store of the pin fields the join path needs, kept outside the heap.
+ *
+ * Every pin is encoded as one record: code, type, belongsToEntityId, profileId, moderatedStatus,
+ * hashedModeratorCode and alias, each as a length prefixed UTF-8 string, followed by deactivateOn in epoch millis.
+ * Records are packed back to back into a direct buffer, or into a memory-mapped snapshot file when loaded with
+ * {@link #load}, and found through an open addressing index of record offsets that is also off-heap. A lookup
+ * decodes a fresh {@link Pin} from its record, so the heap only holds the pins currently in use. The store is
+ * immutable, a new snapshot replaces it as a whole. A single store holds at most 2 GB of records.
+ */
+@Slf4j
+public final class OffHeapPinStore {
+    private static final int MAGIC = 0x50494E53;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+    private static final int STRING_FIELDS = 7;
+    private static final int MINIMUM_RECORD_BYTES = STRING_FIELDS * Short.BYTES + Long.BYTES;
+    private static final short NULL_LENGTH = -1;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    // the index is kept at most half full so probe sequences stay short
+    private static final int INDEX_SLOTS_PER_PIN = 2;
+
+    private final ByteBuffer records;
+    private final IntBuffer index;
+    private final int mask;
+    private final int recordCount;
+    private final int size;
+
+    private OffHeapPinStore(ByteBuffer records, int recordCount) {
+        this.records = records;
+        this.recordCount = recordCount;
+        int slots = Integer.highestOneBit(Math.max(1, recordCount * INDEX_SLOTS_PER_PIN - 1)) << 1;
+        this.index = ByteBuffer.allocateDirect(slots * Integer.BYTES).asIntBuffer();
+        this.mask = slots - 1;
+        int distinct = 0;
+        int offset = 0;
+        for (int i = 0; i < recordCount; i++) {
+            if (insert(offset)) {
+                distinct++;
+            }
+            offset = skipRecord(offset);
+        }
+        this.size = distinct;
+    }
+
+    /**
+     * Encode the given pins into a new direct buffer. Of pins sharing a code the last one wins.
+     */
+    public static OffHeapPinStore build(@NonNull Collection<Pin> pins) {
+        long length = 0;
+        for (Pin pin : pins) {
+            length += encodedLength(pin);
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Pins don't fit into a single store: " + length + " bytes");
+        }
+        ByteBuffer records = ByteBuffer.allocateDirect((int) length);
+        for (Pin pin : pins) {
+            encode(pin, records);
+        }
+        records.flip();
+        return new OffHeapPinStore(records, pins.size());
+    }
+
+    /**
+     * Map a snapshot written by {@link #writeSnapshot}. Only the index is built, records are paged in on use.
+     *
+     * @throws IOException when the file is not a snapshot, or is truncated or corrupt
+     */
+    public static OffHeapPinStore load(@NonNull Path snapshot) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long fileBytes = channel.size();
+            if (fileBytes < HEADER_BYTES || fileBytes - HEADER_BYTES > Integer.MAX_VALUE) {
+                throw new IOException("Not a pin store snapshot, " + fileBytes + " bytes: " + snapshot);
+            }
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileBytes);
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+                throw new IOException("Not a pin store snapshot: " + snapshot);
+            }
+            int recordCount = mapped.getInt();
+            ByteBuffer records = mapped.slice();
+            validateRecords(records, recordCount, snapshot);
+            OffHeapPinStore store = new OffHeapPinStore(records, recordCount);
+            log.info("Loaded {} pins from {} in {} ms", store.size(), snapshot,
+                    System.currentTimeMillis() - startMillis);
+            return store;
+        }
+    }
+
+    /**
+     * Write the store to the given file, replacing it atomically.
+     */
+    public void writeSnapshot(@NonNull Path snapshot) throws IOException {
+        writeSnapshot(snapshot, System.currentTimeMillis());
+    }
+
+    /**
+     * Write the store to the given file, replacing it atomically. The file is replaced with its last modified time
+     * already set to the given time, which readers take as the time the pins were read at.
+     */
+    public void writeSnapshot(@NonNull Path snapshot, long asOfMillis) throws IOException {
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putInt(recordCount);
+            header.flip();
+            writeFully(channel, header);
+            writeFully(channel, records.duplicate());
+            channel.force(true);
+        }
+        Files.setLastModifiedTime(temporary, FileTime.fromMillis(asOfMillis));
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the pin with the given code, null if the store doesn't have it
+     */
+    public Pin find(@NonNull String code) {
+        byte[] key = code.getBytes(StandardCharsets.UTF_8);
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = index.get(slot);
+            if (entry == 0) {
+                return null;
+            }
+            if (codeEquals(entry - 1, key)) {
+                return decode(entry - 1);
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct codes in the store
+     */
+    public int size() {
+        return size;
+    }
+
+    public long footprintBytes() {
+        return (long) records.capacity() + (long) index.capacity() * Integer.BYTES;
+    }
+
+    /**
+     * @return whether the code of the record wasn't indexed yet
+     */
+    private boolean insert(int offset) {
+        byte[] key = readBytes(offset + Short.BYTES, records.getShort(offset));
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = index.get(slot);
+            if (entry == 0 || codeEquals(entry - 1, key)) {
+                index.put(slot, offset + 1);
+                return entry == 0;
+            }
+        }
+    }
+
+    /**
+     * Walks the records of a mapped snapshot, so a truncated or corrupt file fails the load instead of a lookup.
+     */
+    private static void validateRecords(ByteBuffer records, int recordCount, Path snapshot) throws IOException {
+        if (recordCount < 0 || (long) recordCount * MINIMUM_RECORD_BYTES > records.limit()) {
+            throw new IOException("Snapshot of " + records.limit() + " record bytes can't hold " + recordCount
+                    + " pins: " + snapshot);
+        }
+        long position = 0;
+        for (int i = 0; i < recordCount; i++) {
+            for (int field = 0; field < STRING_FIELDS; field++) {
+                if (position + Short.BYTES > records.limit()) {
+                    throw new IOException("Snapshot truncated in pin " + i + ": " + snapshot);
+                }
+                short length = records.getShort((int) position);
+                if (length < NULL_LENGTH || field == 0 && length == NULL_LENGTH) {
+                    throw new IOException("Corrupt field length " + length + " in pin " + i + ": " + snapshot);
+                }
+                position += Short.BYTES + Math.max(0, length);
+            }
+            position += Long.BYTES;
+            if (position > records.limit()) {
+                throw new IOException("Snapshot truncated in pin " + i + ": " + snapshot);
+            }
+        }
+        if (position != records.limit()) {
+            throw new IOException("Snapshot has " + (records.limit() - position) + " trailing bytes: " + snapshot);
+        }
+    }
+
+    private boolean codeEquals(int offset, byte[] key) {
+        if (records.getShort(offset) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (records.get(offset + Short.BYTES + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Pin decode(int offset) {
+        String[] fields = new String[STRING_FIELDS];
+        int position = offset;
+        for (int i = 0; i < STRING_FIELDS; i++) {
+            short length = records.getShort(position);
+            position += Short.BYTES;
+            if (length != NULL_LENGTH) {
+                fields[i] = new String(readBytes(position, length), StandardCharsets.UTF_8);
+                position += length;
+            }
+        }
+        long deactivateOn = records.getLong(position);
+        return Pin.builder()
+                .code(fields[0])
+                .type(fields[1])
+                .belongsToEntityId(fields[2])
+                .profileId(fields[3])
+                .moderatedStatus(fields[4])
+                .hashedModeratorCode(fields[5])
+                .alias(fields[6])
+                .deactivateOn(deactivateOn == NO_DATE ? null : new Date(deactivateOn))
+                .build();
+    }
+
+    private int skipRecord(int offset) {
+        int position = offset;
+        for (int i = 0; i < STRING_FIELDS; i++) {
+            short length = records.getShort(position);
+            position += Short.BYTES + Math.max(0, length);
+        }
+        return position + Long.BYTES;
+    }
+
+    private byte[] readBytes(int position, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = records.get(position + i);
+        }
+        return bytes;
+    }
+
+    private static String[] stringFields(Pin pin) {
+        return new String[] {pin.getCode(), pin.getType(), pin.getBelongsToEntityId(), pin.getProfileId(),
+                pin.getModeratedStatus(), pin.getHashedModeratorCode(), pin.getAlias()};
+    }
+
+    private static int encodedLength(Pin pin) {
+        int length = MINIMUM_RECORD_BYTES;
+        for (String field : stringFields(pin)) {
+            if (field != null) {
+                length += utf8(field).length;
+            }
+        }
+        return length;
+    }
+
+    private static void encode(Pin pin, ByteBuffer buffer) {
+        if (pin.getCode() == null) {
+            throw new IllegalArgumentException("Pin without code can't be stored");
+        }
+        for (String field : stringFields(pin)) {
+            if (field == null) {
+                buffer.putShort(NULL_LENGTH);
+            } else {
+                byte[] bytes = utf8(field);
+                buffer.putShort((short) bytes.length);
+                buffer.put(bytes);
+            }
+        }
+        buffer.putLong(pin.getDeactivateOn() == null ? NO_DATE : pin.getDeactivateOn().getTime());
+    }
+
+    private static byte[] utf8(String field) {
+        byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Pin field of " + bytes.length + " bytes can't be stored");
+        }
+        return bytes;
+    }
+
+    private static int hash(byte[] key) {
+        // FNV-1a, then a final avalanche so the low bits used for the slot depend on every byte
+        int hash = 0x811C9DC5;
+        for (byte b : key) {
+            hash = (hash ^ b) * 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.dao.model.PinType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class OffHeapPinStoreTest {
+    private static final Pin CONFERENCE_PIN = Pin.builder()
+            .code("1234567890")
+            .type(PinType.Conference.name())
+            .belongsToEntityId("entity-id")
+            .profileId("profile-id")
+            .alias("alias")
+            .deactivateOn(new Date(1_600_000_000_000L))
+            .build();
+    private static final Pin ATTENDEE_PIN = Pin.builder()
+            .code("1234567890123")
+            .type(PinType.Attendee.name())
+            .build();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testFindsEveryStoredPin() {
+        List<Pin> pins = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            pins.add(Pin.builder().code(String.valueOf(1_000_000_000L + i)).profileId("profile-" + i).build());
+        }
+        OffHeapPinStore store = OffHeapPinStore.build(pins);
+
+        assertEquals(pins.size(), store.size());
+        for (Pin pin : pins) {
+            assertEquals(pin.getProfileId(), store.find(pin.getCode()).getProfileId());
+        }
+        assertNull(store.find("9999999999"));
+    }
+
+    @Test
+    public void testKeepsFieldsAndNulls() {
+        OffHeapPinStore store = OffHeapPinStore.build(Arrays.asList(CONFERENCE_PIN, ATTENDEE_PIN));
+
+        assertEquals(CONFERENCE_PIN, store.find(CONFERENCE_PIN.getCode()));
+        assertEquals(ATTENDEE_PIN, store.find(ATTENDEE_PIN.getCode()));
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        Path snapshot = temporaryFolder.getRoot().toPath().resolve("pins.snapshot");
+        OffHeapPinStore.build(Arrays.asList(CONFERENCE_PIN, ATTENDEE_PIN)).writeSnapshot(snapshot);
+
+        OffHeapPinStore loaded = OffHeapPinStore.load(snapshot);
+
+        assertEquals(2, loaded.size());
+        assertEquals(CONFERENCE_PIN, loaded.find(CONFERENCE_PIN.getCode()));
+        assertEquals(ATTENDEE_PIN, loaded.find(ATTENDEE_PIN.getCode()));
+    }
+
+    @Test
+    public void testSizeCountsDistinctCodes() {
+        Pin replaced = Pin.builder().code(CONFERENCE_PIN.getCode()).profileId("other-profile-id").build();
+        OffHeapPinStore store = OffHeapPinStore.build(Arrays.asList(CONFERENCE_PIN, ATTENDEE_PIN, replaced));
+
+        assertEquals(2, store.size());
+        assertEquals(replaced, store.find(CONFERENCE_PIN.getCode()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedSnapshotFailsLoad() throws Exception {
+        Path snapshot = temporaryFolder.getRoot().toPath().resolve("pins.snapshot");
+        OffHeapPinStore.build(Arrays.asList(CONFERENCE_PIN, ATTENDEE_PIN)).writeSnapshot(snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 5));
+
+        OffHeapPinStore.load(snapshot);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRecordCountBeyondFileFailsLoad() throws Exception {
+        Path snapshot = temporaryFolder.getRoot().toPath().resolve("pins.snapshot");
+        OffHeapPinStore.build(Arrays.asList(CONFERENCE_PIN, ATTENDEE_PIN)).writeSnapshot(snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        ByteBuffer.wrap(bytes).putInt(2 * Integer.BYTES, Integer.MAX_VALUE);
+        Files.write(snapshot, bytes);
+
+        OffHeapPinStore.load(snapshot);
+    }
+
+    @Test(expected = IOException.class)
+    public void testFileShorterThanHeaderFailsLoad() throws Exception {
+        Path snapshot = temporaryFolder.getRoot().toPath().resolve("pins.snapshot");
+        Files.write(snapshot, new byte[] {0x50, 0x49});
+
+        OffHeapPinStore.load(snapshot);
+    }
+}
@@ -0,0 +1,166 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.measure.unit.Unit;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Sliding window count of failed passcode lookups per caller, so callers enumerating passcodes are turned away
+ * before their guesses reach the DAO.
+ *
+ * Every tracked key owns a ring of ten second slots covering the window, each packing the slot's period and its
+ * count into one long updated with compare-and-set only, so a key costs about a hundred bytes. With slots that
+ * coarse the window effectively covers the last 50 to 60 seconds. Keys are evicted once idle for a window or when
+ * the maximum number of tracked keys is reached, so memory stays bounded no matter how many callers fail.
+ */
+public class PasscodeFailureThrottle {
+    public static final String SDC_PASSCODE_FAILURE_THROTTLE = "PasscodeFailureThrottle";
+
+    @VisibleForTesting
+    static final int WINDOW_SECONDS = 60;
+    @VisibleForTesting
+    static final int SLOT_SECONDS = 10;
+    private static final int SLOTS = WINDOW_SECONDS / SLOT_SECONDS;
+    @VisibleForTesting
+    static final long MAXIMUM_TRACKED_KEYS = 200_000;
+    private static final long PUBLISH_INTERVAL_SECONDS = 60;
+
+    private final DynamicConfigSnapshot dynamicConfigSnapshot;
+    private final ServiceMetricsPublisher serviceMetricsPublisher;
+    private final LongSupplier clockMillis;
+    private final Cache<String, FailureWindow> windows;
+    private final LongAdder rejects = new LongAdder();
+    private final ScheduledExecutorService publisher;
+
+    @Inject
+    public PasscodeFailureThrottle(DynamicConfigSnapshot dynamicConfigSnapshot,
+            ServiceMetricsPublisher serviceMetricsPublisher) {
+        this(dynamicConfigSnapshot, serviceMetricsPublisher, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    PasscodeFailureThrottle(DynamicConfigSnapshot dynamicConfigSnapshot,
+            ServiceMetricsPublisher serviceMetricsPublisher, LongSupplier clockMillis) {
+        this.dynamicConfigSnapshot = dynamicConfigSnapshot;
+        this.serviceMetricsPublisher = serviceMetricsPublisher;
+        this.clockMillis = clockMillis;
+        this.windows = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_TRACKED_KEYS)
+                .expireAfterAccess(WINDOW_SECONDS, TimeUnit.SECONDS)
+                .build();
+        this.publisher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("passcode-throttle-publisher").setDaemon(true).build());
+        this.publisher.scheduleAtFixedRate(this::publish, PUBLISH_INTERVAL_SECONDS, PUBLISH_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    public boolean isEnabled() {
+        return dynamicConfigSnapshot.getBooleanUncached(SDC_PASSCODE_FAILURE_THROTTLE, false);
+    }
+
+    /**
+     * @return whether the key failed at least maximumFailures lookups within the window, counting a reject if so
+     */
+    public boolean isThrottled(String key, int maximumFailures) {
+        if (key == null) {
+            return false;
+        }
+        FailureWindow window = windows.getIfPresent(key);
+        if (window == null || window.failures(currentSecond()) < maximumFailures) {
+            return false;
+        }
+        rejects.increment();
+        return true;
+    }
+
+    /**
+     * @return whether the key failed at least one lookup within the window
+     */
+    public boolean hasFailures(String key) {
+        if (key == null) {
+            return false;
+        }
+        FailureWindow window = windows.getIfPresent(key);
+        return window != null && window.failures(currentSecond()) > 0;
+    }
+
+    public void recordFailure(String key) {
+        if (key == null) {
+            return;
+        }
+        try {
+            windows.get(key, FailureWindow::new).record(currentSecond());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @VisibleForTesting
+    long trackedKeys() {
+        return windows.size();
+    }
+
+    private long currentSecond() {
+        return TimeUnit.MILLISECONDS.toSeconds(clockMillis.getAsLong());
+    }
+
+    private void publish() {
+        serviceMetricsPublisher.publish("PasscodeFailureThrottle", metrics -> {
+            metrics.addCount("PasscodeFailureThrottle:Rejects", rejects.sumThenReset(), Unit.ONE);
+            metrics.addCount("PasscodeFailureThrottle:TrackedKeys", windows.size(), Unit.ONE);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        publisher.shutdown();
+    }
+
+    private static final class FailureWindow {
+        // low bits hold the count, the remaining bits the period (second / SLOT_SECONDS) the count belongs to
+        private static final int COUNT_BITS = 20;
+        private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+        private final AtomicLongArray slots = new AtomicLongArray(SLOTS);
+
+        void record(long second) {
+            long period = second / SLOT_SECONDS;
+            int slot = (int) (period % SLOTS);
+            while (true) {
+                long packed = slots.get(slot);
+                long updated = packed >>> COUNT_BITS == period
+                        ? Math.min(packed + 1, period << COUNT_BITS | COUNT_MASK)
+                        : period << COUNT_BITS | 1;
+                if (packed == updated || slots.compareAndSet(slot, packed, updated)) {
+                    return;
+                }
+            }
+        }
+
+        long failures(long second) {
+            long period = second / SLOT_SECONDS;
+            long failures = 0;
+            for (int slot = 0; slot < SLOTS; slot++) {
+                long packed = slots.get(slot);
+                if (period - (packed >>> COUNT_BITS) < SLOTS) {
+                    failures += packed & COUNT_MASK;
+                }
+            }
+            return failures;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PasscodeFailureThrottleTest {
+    private static final String DEVICE_KEY = "device:device-id";
+    private static final int MAXIMUM_FAILURES = 3;
+
+    @Mock
+    private DynamicConfigSnapshot dynamicConfigSnapshot;
+
+    @Mock
+    private ServiceMetricsPublisher serviceMetricsPublisher;
+
+    private final AtomicLong clockMillis = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+    private PasscodeFailureThrottle passcodeFailureThrottle;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        passcodeFailureThrottle = new PasscodeFailureThrottle(dynamicConfigSnapshot, serviceMetricsPublisher,
+                clockMillis::get);
+    }
+
+    @Test
+    public void testThrottlesOnceMaximumFailuresReached() {
+        for (int i = 0; i < MAXIMUM_FAILURES - 1; i++) {
+            passcodeFailureThrottle.recordFailure(DEVICE_KEY);
+        }
+        assertFalse(passcodeFailureThrottle.isThrottled(DEVICE_KEY, MAXIMUM_FAILURES));
+
+        passcodeFailureThrottle.recordFailure(DEVICE_KEY);
+        assertTrue(passcodeFailureThrottle.isThrottled(DEVICE_KEY, MAXIMUM_FAILURES));
+        assertFalse(passcodeFailureThrottle.isThrottled("device:other-device-id", MAXIMUM_FAILURES));
+    }
+
+    @Test
+    public void testFailuresSlideOutOfWindow() {
+        for (int i = 0; i < MAXIMUM_FAILURES; i++) {
+            passcodeFailureThrottle.recordFailure(DEVICE_KEY);
+            clockMillis.addAndGet(TimeUnit.SECONDS.toMillis(10));
+        }
+        assertTrue(passcodeFailureThrottle.isThrottled(DEVICE_KEY, MAXIMUM_FAILURES));
+
+        clockMillis.addAndGet(TimeUnit.SECONDS.toMillis(PasscodeFailureThrottle.WINDOW_SECONDS - 25));
+        assertFalse(passcodeFailureThrottle.isThrottled(DEVICE_KEY, MAXIMUM_FAILURES));
+    }
+
+    @Test
+    public void testHasFailuresOnlyWithinWindow() {
+        assertFalse(passcodeFailureThrottle.hasFailures(DEVICE_KEY));
+
+        passcodeFailureThrottle.recordFailure(DEVICE_KEY);
+        assertTrue(passcodeFailureThrottle.hasFailures(DEVICE_KEY));
+
+        clockMillis.addAndGet(TimeUnit.SECONDS.toMillis(PasscodeFailureThrottle.WINDOW_SECONDS));
+        assertFalse(passcodeFailureThrottle.hasFailures(DEVICE_KEY));
+    }
+
+    @Test
+    public void testNullKeyIsNeverTracked() {
+        passcodeFailureThrottle.recordFailure(null);
+        assertFalse(passcodeFailureThrottle.isThrottled(null, 0));
+        assertFalse(passcodeFailureThrottle.hasFailures(null));
+        assertEquals(0, passcodeFailureThrottle.trackedKeys());
+    }
+}
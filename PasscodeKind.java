@@ -0,0 +1,59 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import static com.amazonaws.ucbuzzccp.helper.PasscodeParseHelper.ATTENDEE_PASSCODE_LENGTH;
+import static com.amazonaws.ucbuzzccp.helper.PasscodeParseHelper.CONFERENCE_PASSCODE_LENGTH;
+import static com.amazonaws.ucbuzzccp.helper.PasscodeParseHelper.DIAL_IN_PASSCODE_LENGTH;
+
+/**
+ * Passcode format, classified from the length of the passcode alone so that classification never allocates.
+ *
+ * Every valid kind starts with the conference pin at [0, {@link #conferencePinEnd()}), anything after that up to
+ * {@link #length()} is the attendee or dial-in extension.
+ */
+public enum PasscodeKind {
+    INVALID(0),
+    CONFERENCE(CONFERENCE_PASSCODE_LENGTH),
+    ATTENDEE(ATTENDEE_PASSCODE_LENGTH),
+    DIAL_IN(DIAL_IN_PASSCODE_LENGTH);
+
+    private final int length;
+
+    PasscodeKind(int length) {
+        this.length = length;
+    }
+
+    public static PasscodeKind classify(CharSequence passcode) {
+        switch (passcode.length()) {
+        case CONFERENCE_PASSCODE_LENGTH:
+            return CONFERENCE;
+        case ATTENDEE_PASSCODE_LENGTH:
+            return ATTENDEE;
+        case DIAL_IN_PASSCODE_LENGTH:
+            return DIAL_IN;
+        default:
+            return INVALID;
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int conferencePinEnd() {
+        return this == INVALID ? 0 : CONFERENCE_PASSCODE_LENGTH;
+    }
+
+    public int extensionStart() {
+        return conferencePinEnd();
+    }
+
+    public int extensionEnd() {
+        return length;
+    }
+
+    public boolean hasExtension() {
+        return extensionEnd() > extensionStart();
+    }
+}
@@ -0,0 +1,34 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PasscodeKindTest {
+
+    @Test
+    public void testClassifyByLength() {
+        assertEquals(PasscodeKind.INVALID, PasscodeKind.classify(""));
+        assertEquals(PasscodeKind.INVALID, PasscodeKind.classify("123456789"));
+        assertEquals(PasscodeKind.CONFERENCE, PasscodeKind.classify("1234567890"));
+        assertEquals(PasscodeKind.INVALID, PasscodeKind.classify("12345678901"));
+        assertEquals(PasscodeKind.ATTENDEE, PasscodeKind.classify("1234567890123"));
+        assertEquals(PasscodeKind.INVALID, PasscodeKind.classify("12345678901234"));
+        assertEquals(PasscodeKind.DIAL_IN, PasscodeKind.classify("123456789012345"));
+        assertEquals(PasscodeKind.INVALID, PasscodeKind.classify("1234567890123456"));
+    }
+
+    @Test
+    public void testOffsets() {
+        assertEquals(10, PasscodeKind.ATTENDEE.conferencePinEnd());
+        assertEquals(10, PasscodeKind.ATTENDEE.extensionStart());
+        assertEquals(13, PasscodeKind.ATTENDEE.extensionEnd());
+        assertTrue(PasscodeKind.DIAL_IN.hasExtension());
+        assertFalse(PasscodeKind.CONFERENCE.hasExtension());
+        assertFalse(PasscodeKind.INVALID.hasExtension());
+    }
+}
@@ -7,10 +7,8 @@ import com.amazonaws.ucbuzzccp.LimitExceededException;
 import com.amazonaws.ucbuzzccp.NotFoundException;
 import com.amazonaws.ucbuzzccp.common.PasscodeInfo;
 import com.amazonaws.ucbuzzccp.common.pin.PinManager;
-import com.amazonaws.ucbuzzccp.dao.WaitingRoomAccessRequestDao;
 import com.amazonaws.ucbuzzccp.dao.model.Pin;
 import com.amazonaws.ucbuzzccp.dao.model.PinType;
-import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
 
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -25,7 +23,7 @@ import static com.amazonaws.ucbuzzccp.handler.ExceptionHandler.newNotFoundExcept
 
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
-import java.security.SecureRandom;
+import java.util.Optional;
 
 @Slf4j
 public class PasscodeParseHelper {
@@ -35,20 +33,28 @@ public class PasscodeParseHelper {
     @Autowired
     protected MetricsManager metricsManager;
     @Autowired
-    protected WaitingRoomAccessRequestDao waitingRoomAccessRequestDao;
+    protected DialInCodeAllocator dialInCodeAllocator;
+    // parsing runs on the join path executor as well, where the request scoped metrics are not available
+    @Autowired
+    protected ServiceMetricsPublisher serviceMetricsPublisher;
 
-    private SecureRandom random;
+    protected RandomCodeSource randomCodeSource;
     public static final int CONFERENCE_PASSCODE_LENGTH = 10;
     public static final int ATTENDEE_PASSCODE_LENGTH = 13;
     public static final int DIAL_IN_PASSCODE_LENGTH = 15;
-    private static final int GENERATE_UNIQUE_PIN_TRIES_MAX_LIMIT = 10;
-    private static final int USER_PIN_LENGTH = 5; // pin space is only 90000 not 100000 for pin policy of 5
+    private static final String INVALID_PASSCODE_ERROR_CODE = "invalid_passcode";
+
+    // Rejections are preallocated without a stack trace, passcode guessing floods would otherwise spend most of
+    // their CPU time building exceptions. Details of each rejection are only logged at debug level.
+    private static final RuntimeException INVALID_PASSCODE_REJECTION =
+            new PasscodeRejection("Invalid passcode", INVALID_PASSCODE_ERROR_CODE);
+    private static final RuntimeException PIN_NOT_FOUND_REJECTION =
+            new PasscodeRejection("Could not find pin", INVALID_PASSCODE_ERROR_CODE);
 
     @Inject
     public PasscodeParseHelper() {
         try {
-            random = SecureRandom.getInstance("SHA1PRNG", "SUN");
-            random.nextBytes(new byte[128]);
+            randomCodeSource = new StripedSecureRandomCodeSource();
         } catch(NoSuchAlgorithmException | NoSuchProviderException e) {
             throw new NotFoundException("Failed to find SecureRandom instance for SHA1PRNG algo from SUN.", e);
         }
@@ -70,69 +76,74 @@ public class PasscodeParseHelper {
     }
 
     public PasscodeInfo parseAndVerifyPasscode(String requestPasscode, boolean loadAttendeePin) {
-        int passcodeLength = requestPasscode.length();
-        if (passcodeLength < CONFERENCE_PASSCODE_LENGTH) {
-            throw newNotFoundExceptionWithCode("Pin has invalid length " + passcodeLength, "invalid_passcode");
+        PasscodeKind kind = PasscodeKind.classify(requestPasscode);
+        if (kind == PasscodeKind.INVALID || (kind == PasscodeKind.ATTENDEE && !loadAttendeePin)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Rejecting passcode {} with length {}", tag(requestPasscode), requestPasscode.length());
+            }
+            throw INVALID_PASSCODE_REJECTION;
+        }
+
+        Optional<PinResolutionContext> context = PinResolutionContext.current();
+        if (context.isPresent()) {
+            return context.get().parse(requestPasscode, loadAttendeePin,
+                    () -> parseAndVerifyPasscode(requestPasscode, kind));
         }
+        return parseAndVerifyPasscode(requestPasscode, kind);
+    }
 
+    private PasscodeInfo parseAndVerifyPasscode(String requestPasscode, PasscodeKind kind) {
         PasscodeInfo info = new PasscodeInfo();
-        info.setConferencePin(requestPasscode.substring(0, CONFERENCE_PASSCODE_LENGTH));
+        info.setConferencePin(requestPasscode.substring(0, kind.conferencePinEnd()));
 
-        if (passcodeLength == ATTENDEE_PASSCODE_LENGTH && loadAttendeePin) {
+        if (kind == PasscodeKind.ATTENDEE) {
             String attendeePin = requestPasscode;
-            Pin attendeePinModel = pinManager.find(attendeePin);
+            Pin attendeePinModel = PinResolutionContext.current()
+                    .map(context -> context.findPin(attendeePin, pinManager::find))
+                    .orElseGet(() -> pinManager.find(attendeePin));
             if (attendeePinModel == null) {
-                throw newNotFoundExceptionWithCode("Could not find pin", "invalid_passcode");
+                throw PIN_NOT_FOUND_REJECTION;
             }
             if (attendeePinModel.getPinType() != PinType.Attendee) {
                 throw newNotFoundExceptionWithCode(
                         String.format("Invalid type %s for pin:%s", attendeePinModel.getType(), tag(requestPasscode)),
-                        "invalid_passcode");
+                        INVALID_PASSCODE_ERROR_CODE);
             }
             info.setAttendeePin(attendeePinModel);
-            metricsManager.get().addCount("JoinedByPinType:Attendee", 1, Unit.ONE);
-        } else if (passcodeLength == DIAL_IN_PASSCODE_LENGTH) {
+            serviceMetricsPublisher.publish("PasscodeParseHelper",
+                    metrics -> metrics.addCount("JoinedByPinType:Attendee", 1, Unit.ONE));
+        } else if (kind == PasscodeKind.DIAL_IN) {
             info.setDialInPasscode(requestPasscode);
-            metricsManager.get().addCount("JoinedByPinType:DialIn", 1, Unit.ONE);
-        } else if (passcodeLength > CONFERENCE_PASSCODE_LENGTH) {
-            throw newNotFoundExceptionWithCode(String.format("Invalid passcode %s with length %s",
-                    requestPasscode, requestPasscode.length()), "invalid_passcode");
+            serviceMetricsPublisher.publish("PasscodeParseHelper",
+                    metrics -> metrics.addCount("JoinedByPinType:DialIn", 1, Unit.ONE));
         }
 
         return info;
     }
 
-    public String generateUserDialInCode(@NonNull String wrId, @NonNull String profileId, @NonNull String meetingPin) {
-        log.info("generate WR user dial-in code for waitingRoomId: {}, profileId: {}", wrId, profileId);
-        String code = generateRandomCode(meetingPin, wrId, 0);
-        log.info("Generated UserDialInCode: {} for waitingRoomId: {}, profileId: {}", code, wrId, profileId);
-        return code;
-    }
+    /**
+     * Rejection shared by every request and thread. It never captures a stack trace, ignores suppressed exceptions and
+     * has its cause fixed to none, so no caller can change what later rejections carry.
+     */
+    private static final class PasscodeRejection extends NotFoundException {
+        private static final long serialVersionUID = 1L;
 
-    private String generateRandomCode(@NonNull String baseCode, @NonNull String wrId, int tryCount) {
-        if (tryCount == GENERATE_UNIQUE_PIN_TRIES_MAX_LIMIT) {
-            log.info("Max tries reached: Cannot make more than {} tries to allocate waiting room user dial-in code",
-                GENERATE_UNIQUE_PIN_TRIES_MAX_LIMIT);
-            metricsManager.get().addCount("WRUserDialInCode: MaxTriesReached", 1, Unit.ONE);
-            throw new LimitExceededException("Max tries reached for allocating waiting room user dial-in code");
+        PasscodeRejection(String message, String errorCode) {
+            super(message, null, false, false);
+            setErrorCode(errorCode);
         }
-        String code = String.valueOf((long) Math.floor(random.nextDouble()
-            * (9 * (long) Math.pow(10, USER_PIN_LENGTH - 1))) + (long)Math.pow(10, USER_PIN_LENGTH - 1));
-        code = baseCode + code;
-        if (checkForCollisions(code, wrId)) {
-            return generateRandomCode(baseCode, wrId, tryCount+1);
-        }
-        log.info("No. of tries made for allocating waiting room user dial-in code: {}", String.valueOf(tryCount+1));
-        metricsManager.get().addCount("WRUserDialInCode: AllocationTries", tryCount+1, Unit.ONE);
-        return code;
     }
 
-    boolean checkForCollisions(@NonNull String userDialInCode, @NonNull String wrId) {
-        WaitingRoomAccessRequest wrAccessRequest = waitingRoomAccessRequestDao
-            .loadWRAccessRequestByDialInCodeAndWrId(userDialInCode, wrId);
-        if (wrAccessRequest != null) {
-            return true;
+    public String generateUserDialInCode(@NonNull String wrId, @NonNull String profileId, @NonNull String meetingPin) {
+        log.info("generate WR user dial-in code for waitingRoomId: {}, profileId: {}", wrId, profileId);
+        String code;
+        try {
+            code = dialInCodeAllocator.allocate(wrId, meetingPin, randomCodeSource);
+        } catch (LimitExceededException e) {
+            metricsManager.get().addCount("WRUserDialInCode: Exhausted", 1, Unit.ONE);
+            throw e;
         }
-        return false;
+        log.info("Generated UserDialInCode: {} for waitingRoomId: {}, profileId: {}", code, wrId, profileId);
+        return code;
     }
 }
@@ -0,0 +1,118 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.amazon.coral.metrics.Metrics;
+import com.amazon.coral.metrics.MetricsFactory;
+import com.amazonaws.ucbuzzccp.common.pin.PinManager;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.dao.model.PinType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Valid and invalid passcode classification and parsing. Run with {@code -prof gc} to get bytes/op next to
+ * ns/op, the classifier and the rejection paths are expected to report 0 B/op. The attendee and dial-in cases
+ * go through an in-memory pin manager and metrics, stubbed without invocation recording.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PasscodeParseHelperBenchmark {
+    private static final String CONFERENCE_PASSCODE = "1234567890";
+    private static final String ATTENDEE_PASSCODE = "1234567890123";
+    private static final String UNKNOWN_ATTENDEE_PASSCODE = "1234567890999";
+    private static final String DIAL_IN_PASSCODE = "123456789012345";
+    private static final String SHORT_PASSCODE = "12345";
+    private static final String INVALID_LENGTH_PASSCODE = "123456789012";
+
+    private PasscodeParseHelper passcodeParseHelper;
+
+    @Setup
+    public void setup() {
+        PinManager pinManager = mock(PinManager.class, withSettings().stubOnly());
+        when(pinManager.find(ATTENDEE_PASSCODE)).thenReturn(Pin.builder()
+                .code(ATTENDEE_PASSCODE)
+                .type(PinType.Attendee.name())
+                .build());
+        MetricsFactory metricsFactory = mock(MetricsFactory.class, withSettings().stubOnly());
+        when(metricsFactory.newMetrics()).thenReturn(mock(Metrics.class, withSettings().stubOnly()));
+
+        passcodeParseHelper = new PasscodeParseHelper();
+        ReflectionTestUtils.setField(passcodeParseHelper, "pinManager", pinManager);
+        ReflectionTestUtils.setField(passcodeParseHelper, "serviceMetricsPublisher",
+                new ServiceMetricsPublisher(metricsFactory));
+    }
+
+    @Benchmark
+    public PasscodeKind classifyConference() {
+        return PasscodeKind.classify(CONFERENCE_PASSCODE);
+    }
+
+    @Benchmark
+    public PasscodeKind classifyDialIn() {
+        return PasscodeKind.classify(DIAL_IN_PASSCODE);
+    }
+
+    @Benchmark
+    public PasscodeKind classifyInvalid() {
+        return PasscodeKind.classify(INVALID_LENGTH_PASSCODE);
+    }
+
+    @Benchmark
+    public Object parseConference() {
+        return passcodeParseHelper.parseAndVerifyPasscode(CONFERENCE_PASSCODE, false);
+    }
+
+    @Benchmark
+    public Object parseAttendee() {
+        return passcodeParseHelper.parseAndVerifyPasscode(ATTENDEE_PASSCODE, true);
+    }
+
+    @Benchmark
+    public Object parseDialIn() {
+        return passcodeParseHelper.parseAndVerifyPasscode(DIAL_IN_PASSCODE, false);
+    }
+
+    @Benchmark
+    public void rejectUnknownAttendee(Blackhole blackhole) {
+        reject(UNKNOWN_ATTENDEE_PASSCODE, true, blackhole);
+    }
+
+    @Benchmark
+    public void rejectShort(Blackhole blackhole) {
+        reject(SHORT_PASSCODE, false, blackhole);
+    }
+
+    @Benchmark
+    public void rejectInvalidLength(Blackhole blackhole) {
+        reject(INVALID_LENGTH_PASSCODE, false, blackhole);
+    }
+
+    private void reject(String passcode, boolean loadAttendeePin, Blackhole blackhole) {
+        try {
+            blackhole.consume(passcodeParseHelper.parseAndVerifyPasscode(passcode, loadAttendeePin));
+        } catch (RuntimeException e) {
+            blackhole.consume(e);
+        }
+    }
+}
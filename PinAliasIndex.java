@@ -0,0 +1,196 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.PinAliasDao;
+import com.amazonaws.ucbuzzccp.dao.model.PinAlias;
+import com.amazonaws.ucbuzzccp.helper.DynamicConfigSnapshot;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.measure.unit.NonSI;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Local index of every pin alias, so that resolving an alias needs no lookup at all.
+ *
+ * The index is a sorted array snapshot of alias to passcode loaded from {@link PinAliasDao} in the background and
+ * reloaded every reload interval, plus an overlay of the alias updates made on this host since the last load. While
+ * the snapshot is fresh it is authoritative: a code found in it resolves to its passcode, and a code missing from it
+ * is not an alias and resolves to itself, in both cases without a lookup. An alias created or repointed on another
+ * host is therefore missed for at most the maximum staleness, the same bound {@link PinLookupCache} already accepts
+ * for its cached resolutions. Once the snapshot is older than that, or the index is off, every code goes to the
+ * given resolver instead.
+ *
+ * The DAO has no query for aliases changed since a point in time, so every reload is a full scan of the alias
+ * table. Its cost is published as PinAliasIndex:Entries and PinAliasIndex:LoadTime. The index, and with it the scan,
+ * only runs while {@link #SDC_PIN_ALIAS_INDEX} is on, which is only worth it while the alias table is small enough
+ * for a scan per host per reload interval to cost less than the alias lookups it saves.
+ */
+@Slf4j
+public class PinAliasIndex {
+    public static final String SDC_PIN_ALIAS_INDEX = "PinAliasIndex";
+
+    @VisibleForTesting
+    static final long RELOAD_INTERVAL_SECONDS = 20;
+    @VisibleForTesting
+    static final long MAXIMUM_STALENESS_MILLIS = TimeUnit.SECONDS.toMillis(3 * RELOAD_INTERVAL_SECONDS);
+    // object headers, array slots and String/char[] overhead per entry, used for the footprint estimate
+    private static final long ENTRY_OVERHEAD_BYTES = 2 * (8 + 40);
+
+    private final PinAliasDao pinAliasDao;
+    private final DynamicConfigSnapshot dynamicConfigSnapshot;
+    private final ServiceMetricsPublisher serviceMetricsPublisher;
+    private final Map<String, OverlayEntry> overlay = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reloader;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    @Inject
+    public PinAliasIndex(PinAliasDao pinAliasDao, DynamicConfigSnapshot dynamicConfigSnapshot,
+            ServiceMetricsPublisher serviceMetricsPublisher) {
+        this(pinAliasDao, dynamicConfigSnapshot, serviceMetricsPublisher, Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("pin-alias-index").setDaemon(true).build()));
+    }
+
+    @VisibleForTesting
+    PinAliasIndex(PinAliasDao pinAliasDao, DynamicConfigSnapshot dynamicConfigSnapshot,
+            ServiceMetricsPublisher serviceMetricsPublisher, ScheduledExecutorService reloader) {
+        this.pinAliasDao = pinAliasDao;
+        this.dynamicConfigSnapshot = dynamicConfigSnapshot;
+        this.serviceMetricsPublisher = serviceMetricsPublisher;
+        this.reloader = reloader;
+        this.reloader.scheduleWithFixedDelay(this::reloadIfEnabled, 0, RELOAD_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public boolean isEnabled() {
+        return dynamicConfigSnapshot.getBoolean(SDC_PIN_ALIAS_INDEX, false);
+    }
+
+    public String resolveToPasscode(@NonNull String code, @NonNull Function<String, String> resolver) {
+        if (!isEnabled()) {
+            return resolver.apply(code);
+        }
+        OverlayEntry updated = overlay.get(code);
+        if (updated != null) {
+            return updated.passcode;
+        }
+        Snapshot current = snapshot;
+        if (System.currentTimeMillis() - current.loadedAtMillis > MAXIMUM_STALENESS_MILLIS) {
+            return resolver.apply(code);
+        }
+        String passcode = current.get(code);
+        return passcode != null ? passcode : code;
+    }
+
+    /**
+     * Record an alias update made on this host, after it was written to the DAO, so it is visible before the next
+     * reload.
+     */
+    public void put(@NonNull String alias, @NonNull String passcode) {
+        overlay.put(alias, new OverlayEntry(passcode, System.currentTimeMillis()));
+    }
+
+    public long footprintBytes() {
+        return snapshot.footprintBytes;
+    }
+
+    public long stalenessMillis() {
+        return System.currentTimeMillis() - snapshot.loadedAtMillis;
+    }
+
+    @VisibleForTesting
+    void reloadIfEnabled() {
+        if (isEnabled()) {
+            reload();
+        } else if (snapshot != Snapshot.EMPTY) {
+            snapshot = Snapshot.EMPTY;
+            overlay.clear();
+        }
+    }
+
+    @VisibleForTesting
+    void reload() {
+        try {
+            long loadedAtMillis = System.currentTimeMillis();
+            TreeMap<String, String> aliases = new TreeMap<>();
+            for (PinAlias pinAlias : pinAliasDao.loadAll()) {
+                aliases.put(pinAlias.getAlias(), pinAlias.getCode());
+            }
+            Snapshot loaded = new Snapshot(aliases, loadedAtMillis);
+            snapshot = loaded;
+            // updates written before the load started are part of the snapshot now, whatever they were overwritten by
+            overlay.values().removeIf(entry -> entry.putAtMillis < loadedAtMillis);
+
+            long loadTimeMillis = System.currentTimeMillis() - loadedAtMillis;
+            serviceMetricsPublisher.publish("PinAliasIndex", metrics -> {
+                metrics.addCount("PinAliasIndex:Entries", loaded.aliases.length, Unit.ONE);
+                metrics.addCount("PinAliasIndex:FootprintBytes", loaded.footprintBytes, NonSI.BYTE);
+                metrics.addTime("PinAliasIndex:LoadTime", loadTimeMillis, SI.MILLI(SI.SECOND));
+            });
+            log.info("Loaded {} pin aliases, estimated footprint {} bytes", loaded.aliases.length,
+                    loaded.footprintBytes);
+        } catch (RuntimeException e) {
+            log.warn("Unable to reload pin alias index, index is {} ms stale", stalenessMillis(), e);
+            serviceMetricsPublisher.publish("PinAliasIndex",
+                    metrics -> metrics.addCount("PinAliasIndex:ReloadFailure", 1, Unit.ONE));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloader.shutdown();
+    }
+
+    private static final class OverlayEntry {
+        private final String passcode;
+        private final long putAtMillis;
+
+        OverlayEntry(String passcode, long putAtMillis) {
+            this.passcode = passcode;
+            this.putAtMillis = putAtMillis;
+        }
+    }
+
+    private static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(new TreeMap<>(), 0);
+
+        private final String[] aliases;
+        private final String[] passcodes;
+        private final long loadedAtMillis;
+        private final long footprintBytes;
+
+        Snapshot(TreeMap<String, String> sortedAliases, long loadedAtMillis) {
+            this.aliases = new String[sortedAliases.size()];
+            this.passcodes = new String[sortedAliases.size()];
+            this.loadedAtMillis = loadedAtMillis;
+            long footprint = 0;
+            int i = 0;
+            for (Map.Entry<String, String> entry : sortedAliases.entrySet()) {
+                aliases[i] = entry.getKey();
+                passcodes[i] = entry.getValue();
+                footprint += ENTRY_OVERHEAD_BYTES + 2L * (entry.getKey().length() + entry.getValue().length());
+                i++;
+            }
+            this.footprintBytes = footprint;
+        }
+
+        String get(String alias) {
+            int i = Arrays.binarySearch(aliases, alias);
+            return i >= 0 ? passcodes[i] : null;
+        }
+    }
+}
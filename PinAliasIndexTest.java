@@ -0,0 +1,95 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.PinAliasDao;
+import com.amazonaws.ucbuzzccp.dao.model.PinAlias;
+import com.amazonaws.ucbuzzccp.helper.DynamicConfigSnapshot;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class PinAliasIndexTest {
+    private static final String ALIAS = "alias";
+    private static final String PASSCODE = "1234567890";
+    private static final String NEW_PASSCODE = "0987654321";
+
+    @Mock
+    private PinAliasDao pinAliasDao;
+    @Mock
+    private DynamicConfigSnapshot dynamicConfigSnapshot;
+    @Mock
+    private ServiceMetricsPublisher serviceMetricsPublisher;
+    @Mock
+    private ScheduledExecutorService reloader;
+
+    private final AtomicInteger resolverCalls = new AtomicInteger();
+    private final Function<String, String> resolver = code -> {
+        resolverCalls.incrementAndGet();
+        return "resolved-" + code;
+    };
+    private PinAliasIndex pinAliasIndex;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(dynamicConfigSnapshot.getBoolean(PinAliasIndex.SDC_PIN_ALIAS_INDEX, false)).thenReturn(true);
+        when(pinAliasDao.loadAll()).thenReturn(Collections.singletonList(
+                PinAlias.builder().alias(ALIAS).code(PASSCODE).build()));
+        pinAliasIndex = new PinAliasIndex(pinAliasDao, dynamicConfigSnapshot, serviceMetricsPublisher, reloader);
+    }
+
+    @Test
+    public void testIndexedAliasResolvesWithoutLookup() {
+        pinAliasIndex.reload();
+        assertEquals(PASSCODE, pinAliasIndex.resolveToPasscode(ALIAS, resolver));
+        assertEquals(0, resolverCalls.get());
+    }
+
+    @Test
+    public void testMissOfFreshIndexResolvesToItselfWithoutLookup() {
+        pinAliasIndex.reload();
+        assertEquals(PASSCODE, pinAliasIndex.resolveToPasscode(PASSCODE, resolver));
+        assertEquals(0, resolverCalls.get());
+    }
+
+    @Test
+    public void testStaleIndexFallsBackToResolver() {
+        assertEquals("resolved-" + ALIAS, pinAliasIndex.resolveToPasscode(ALIAS, resolver));
+        assertEquals("resolved-" + PASSCODE, pinAliasIndex.resolveToPasscode(PASSCODE, resolver));
+    }
+
+    @Test
+    public void testLocalUpdateIsServedUntilALaterLoad() throws Exception {
+        pinAliasIndex.reload();
+        pinAliasIndex.put(ALIAS, NEW_PASSCODE);
+        assertEquals(NEW_PASSCODE, pinAliasIndex.resolveToPasscode(ALIAS, resolver));
+
+        // the alias was pointed elsewhere again by another host, the later load wins over the older local update
+        Thread.sleep(5);
+        when(pinAliasDao.loadAll()).thenReturn(Collections.singletonList(
+                PinAlias.builder().alias(ALIAS).code(PASSCODE).build()));
+        pinAliasIndex.reload();
+        assertEquals(PASSCODE, pinAliasIndex.resolveToPasscode(ALIAS, resolver));
+    }
+
+    @Test
+    public void testDisabledIndexNeitherScansNorServes() {
+        when(dynamicConfigSnapshot.getBoolean(PinAliasIndex.SDC_PIN_ALIAS_INDEX, false)).thenReturn(false);
+        pinAliasIndex.reloadIfEnabled();
+        verify(pinAliasDao, never()).loadAll();
+        assertEquals("resolved-" + ALIAS, pinAliasIndex.resolveToPasscode(ALIAS, resolver));
+    }
+}
@@ -0,0 +1,38 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.dao.model;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBVersionAttribute;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Fleet wide state of the pin expiry sweep: which host holds the sweep lease until when, and the code of the last
+ * pin expired by an unfinished sweep. Every write is conditional on the version read.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@DynamoDBTable(tableName = "PinExpirySweepState")
+public class PinExpirySweepState {
+    @DynamoDBHashKey(attributeName = "id")
+    private String id;
+
+    @DynamoDBAttribute(attributeName = "leaseOwner")
+    private String leaseOwner;
+
+    @DynamoDBAttribute(attributeName = "leaseExpiresAt")
+    private Long leaseExpiresAt;
+
+    @DynamoDBAttribute(attributeName = "checkpoint")
+    private String checkpoint;
+
+    @DynamoDBVersionAttribute(attributeName = "version")
+    private Long version;
+}
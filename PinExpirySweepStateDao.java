@@ -0,0 +1,85 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.dao;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.ucbuzzccp.dao.model.PinExpirySweepState;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+
+/**
+ * Lease and checkpoint of the pin expiry sweep, kept in a single item so that only one host sweeps at a time and a
+ * sweep cut short on one host is resumed by whichever host sweeps next.
+ *
+ * Writes rely on the version attribute of the item, a write based on an outdated read fails instead of overwriting
+ * the lease or checkpoint of another host.
+ */
+@Slf4j
+public class PinExpirySweepStateDao {
+    static final String SWEEP_ID = "PinExpirySweep";
+
+    private final DynamoDBMapper dynamoDBMapper;
+
+    @Inject
+    public PinExpirySweepStateDao(DynamoDBMapper dynamoDBMapper) {
+        this.dynamoDBMapper = dynamoDBMapper;
+    }
+
+    /**
+     * @return the sweep state, null before the first sweep ever ran
+     */
+    public PinExpirySweepState load() {
+        return dynamoDBMapper.load(PinExpirySweepState.class, SWEEP_ID);
+    }
+
+    /**
+     * Takes the lease for the owner unless another owner holds an unexpired one, or renews it if the owner holds it.
+     *
+     * @return the sweep state under the owner's lease, null if the lease is held elsewhere
+     */
+    public PinExpirySweepState tryAcquireLease(@NonNull String owner, long nowMillis, long leaseMillis) {
+        PinExpirySweepState state = load();
+        if (state == null) {
+            state = PinExpirySweepState.builder().id(SWEEP_ID).build();
+        } else if (state.getLeaseOwner() != null && !owner.equals(state.getLeaseOwner())
+                && state.getLeaseExpiresAt() != null && state.getLeaseExpiresAt() > nowMillis) {
+            return null;
+        }
+        state.setLeaseOwner(owner);
+        state.setLeaseExpiresAt(nowMillis + leaseMillis);
+        try {
+            dynamoDBMapper.save(state);
+            return state;
+        } catch (ConditionalCheckFailedException e) {
+            log.info("Pin expiry sweep lease was taken concurrently by another host");
+            return null;
+        }
+    }
+
+    /**
+     * Persists the checkpoint and extends the lease of the given state, which must be held by its owner.
+     *
+     * @throws ConditionalCheckFailedException when the lease was lost to another host in the meantime
+     */
+    public void saveCheckpoint(@NonNull PinExpirySweepState state, String checkpoint, long nowMillis,
+            long leaseMillis) {
+        state.setCheckpoint(checkpoint);
+        state.setLeaseExpiresAt(nowMillis + leaseMillis);
+        dynamoDBMapper.save(state);
+    }
+
+    /**
+     * Gives up the lease early so the next sweep can run on any host.
+     */
+    public void releaseLease(@NonNull PinExpirySweepState state) {
+        state.setLeaseExpiresAt(0L);
+        try {
+            dynamoDBMapper.save(state);
+        } catch (ConditionalCheckFailedException e) {
+            log.info("Pin expiry sweep lease was already taken by another host");
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.PinDao;
+import com.amazonaws.ucbuzzccp.dao.PinExpirySweepStateDao;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.dao.model.PinExpirySweepState;
+import com.amazonaws.ucbuzzccp.helper.DynamicConfigSnapshot;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Background sweeper expiring pins whose deactivateOn date has passed.
+ *
+ * Every sweep interval the sweeper pages through the pins due for deactivation in code order and expires each page
+ * as one batch through {@link PinHandler#expireAll}, throttled to a fixed rate so the sweep never competes with the
+ * join path for table capacity. Only the host holding the sweep lease of {@link PinExpirySweepStateDao} sweeps, the
+ * others skip the run. A checkpoint is persisted with the lease after every page, a sweep that runs out of its time
+ * budget or fails is resumed from it by whichever host sweeps next instead of starting over. The checkpoint is the
+ * code of the last pin before the first one that failed to expire, so failed pins are retried by the next sweep
+ * while the current one carries on past them. Sweeps only run while {@link #SDC_PIN_EXPIRY_SWEEP} is on.
+ */
+@Slf4j
+public class PinExpirySweeper {
+    public static final String SDC_PIN_EXPIRY_SWEEP = "PinExpirySweep";
+
+    @VisibleForTesting
+    static final int PAGE_SIZE = 100;
+    @VisibleForTesting
+    static final double EXPIRES_PER_SECOND = 50;
+    @VisibleForTesting
+    static final long SWEEP_INTERVAL_MINUTES = 15;
+    @VisibleForTesting
+    static final long SWEEP_BUDGET_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    // renewed after every page, outlives the budget so a slow last page can't hand the lease to another host
+    @VisibleForTesting
+    static final long LEASE_MILLIS = SWEEP_BUDGET_MILLIS + TimeUnit.MINUTES.toMillis(2);
+
+    private final PinDao pinDao;
+    private final PinHandler pinHandler;
+    private final PinExpirySweepStateDao pinExpirySweepStateDao;
+    private final DynamicConfigSnapshot dynamicConfigSnapshot;
+    private final ServiceMetricsPublisher serviceMetricsPublisher;
+    private final LongSupplier clockMillis;
+    private final RateLimiter rateLimiter;
+    private final String owner;
+    private final ScheduledExecutorService scheduler;
+
+    @Inject
+    public PinExpirySweeper(PinDao pinDao, PinHandler pinHandler, PinExpirySweepStateDao pinExpirySweepStateDao,
+            DynamicConfigSnapshot dynamicConfigSnapshot, ServiceMetricsPublisher serviceMetricsPublisher) {
+        this(pinDao, pinHandler, pinExpirySweepStateDao, dynamicConfigSnapshot, serviceMetricsPublisher,
+                System::currentTimeMillis, RateLimiter.create(EXPIRES_PER_SECOND), UUID.randomUUID().toString(),
+                Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder().setNameFormat("pin-expiry-sweeper").setDaemon(true).build()));
+    }
+
+    @VisibleForTesting
+    PinExpirySweeper(PinDao pinDao, PinHandler pinHandler, PinExpirySweepStateDao pinExpirySweepStateDao,
+            DynamicConfigSnapshot dynamicConfigSnapshot, ServiceMetricsPublisher serviceMetricsPublisher,
+            LongSupplier clockMillis, RateLimiter rateLimiter, String owner, ScheduledExecutorService scheduler) {
+        this.pinDao = pinDao;
+        this.pinHandler = pinHandler;
+        this.pinExpirySweepStateDao = pinExpirySweepStateDao;
+        this.dynamicConfigSnapshot = dynamicConfigSnapshot;
+        this.serviceMetricsPublisher = serviceMetricsPublisher;
+        this.clockMillis = clockMillis;
+        this.rateLimiter = rateLimiter;
+        this.owner = owner;
+        this.scheduler = scheduler;
+        this.scheduler.scheduleWithFixedDelay(this::sweepIfEnabled, SWEEP_INTERVAL_MINUTES, SWEEP_INTERVAL_MINUTES,
+                TimeUnit.MINUTES);
+    }
+
+    @VisibleForTesting
+    void sweepIfEnabled() {
+        if (!dynamicConfigSnapshot.getBooleanUncached(SDC_PIN_EXPIRY_SWEEP, false)) {
+            return;
+        }
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            log.warn("Pin expiry sweep failed, resuming from the persisted checkpoint on the next run", e);
+            serviceMetricsPublisher.publish("PinExpirySweeper",
+                    metrics -> metrics.addCount("PinExpirySweeper:SweepFailure", 1, Unit.ONE));
+        }
+    }
+
+    @VisibleForTesting
+    void sweep() {
+        long startMillis = clockMillis.getAsLong();
+        PinExpirySweepState state = pinExpirySweepStateDao.tryAcquireLease(owner, startMillis, LEASE_MILLIS);
+        if (state == null) {
+            log.debug("Pin expiry sweep lease is held by another host, skipping this run");
+            serviceMetricsPublisher.publish("PinExpirySweeper",
+                    metrics -> metrics.addCount("PinExpirySweeper:LeaseHeldElsewhere", 1, Unit.ONE));
+            return;
+        }
+        Date cutoff = new Date(startMillis);
+        // the next page is read after checkpoint, the sweep is resumed after resumeFrom, which stays behind the
+        // first pin that failed to expire
+        String checkpoint = state.getCheckpoint();
+        String resumeFrom = checkpoint;
+        boolean heldBack = false;
+        long expired = 0;
+        long failed = 0;
+        boolean complete = false;
+        try {
+            while (clockMillis.getAsLong() - startMillis < SWEEP_BUDGET_MILLIS) {
+                List<Pin> page = pinDao.loadDeactivatingBefore(cutoff, checkpoint, PAGE_SIZE);
+                publishLag(page, startMillis);
+                List<String> codes = page.stream().map(Pin::getCode).collect(Collectors.toList());
+                Set<String> unexpired = expireAll(codes);
+                for (String code : codes) {
+                    heldBack |= unexpired.contains(code);
+                    if (!heldBack) {
+                        resumeFrom = code;
+                    }
+                    checkpoint = code;
+                }
+                expired += codes.size() - unexpired.size();
+                failed += unexpired.size();
+                complete = page.size() < PAGE_SIZE;
+                pinExpirySweepStateDao.saveCheckpoint(state, complete && !heldBack ? null : resumeFrom,
+                        clockMillis.getAsLong(), LEASE_MILLIS);
+                if (complete) {
+                    break;
+                }
+            }
+        } finally {
+            pinExpirySweepStateDao.releaseLease(state);
+            long elapsedMillis = clockMillis.getAsLong() - startMillis;
+            long expiredCount = expired;
+            long failedCount = failed;
+            serviceMetricsPublisher.publish("PinExpirySweeper", metrics -> {
+                metrics.addCount("PinExpirySweeper:Expired", expiredCount, Unit.ONE);
+                metrics.addCount("PinExpirySweeper:Failed", failedCount, Unit.ONE);
+                metrics.addCount("PinExpirySweeper:ExpiredPerSecond",
+                        elapsedMillis == 0 ? 0 : expiredCount * 1000.0 / elapsedMillis, Unit.ONE);
+                metrics.addTime("PinExpirySweeper:SweepTime", elapsedMillis, SI.MILLI(SI.SECOND));
+            });
+            log.info("Pin expiry sweep expired {} pins with {} failures in {} ms, complete: {}", expired, failed,
+                    elapsedMillis, complete);
+        }
+    }
+
+    /**
+     * Expires one page of pins as a batch, a batch that fails as a whole leaves every pin of it unexpired.
+     */
+    private Set<String> expireAll(List<String> codes) {
+        if (codes.isEmpty()) {
+            return Collections.emptySet();
+        }
+        rateLimiter.acquire(codes.size());
+        try {
+            return new HashSet<>(pinHandler.expireAll(codes));
+        } catch (RuntimeException e) {
+            log.warn("Unable to expire a batch of {} pins due for deactivation", codes.size(), e);
+            return new HashSet<>(codes);
+        }
+    }
+
+    /**
+     * Publishes how long ago the oldest pin of the page should have been deactivated.
+     */
+    private void publishLag(List<Pin> page, long nowMillis) {
+        long oldestDeactivateOn = page.stream()
+                .map(Pin::getDeactivateOn)
+                .filter(deactivateOn -> deactivateOn != null)
+                .mapToLong(Date::getTime)
+                .min()
+                .orElse(nowMillis);
+        serviceMetricsPublisher.publish("PinExpirySweeper", metrics ->
+                metrics.addTime("PinExpirySweeper:Lag", nowMillis - oldestDeactivateOn, SI.MILLI(SI.SECOND)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
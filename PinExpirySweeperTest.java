@@ -0,0 +1,170 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.PinDao;
+import com.amazonaws.ucbuzzccp.dao.PinExpirySweepStateDao;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.dao.model.PinExpirySweepState;
+import com.amazonaws.ucbuzzccp.helper.DynamicConfigSnapshot;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import com.google.common.util.concurrent.RateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PinExpirySweeperTest {
+    private static final String OWNER = "owner";
+
+    @Mock
+    private PinDao pinDao;
+    @Mock
+    private PinHandler pinHandler;
+    @Mock
+    private PinExpirySweepStateDao pinExpirySweepStateDao;
+    @Mock
+    private DynamicConfigSnapshot dynamicConfigSnapshot;
+    @Mock
+    private ServiceMetricsPublisher serviceMetricsPublisher;
+    @Mock
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong clockMillis = new AtomicLong(1_000_000L);
+    private PinExpirySweeper pinExpirySweeper;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(dynamicConfigSnapshot.getBooleanUncached(PinExpirySweeper.SDC_PIN_EXPIRY_SWEEP, false)).thenReturn(true);
+        pinExpirySweeper = new PinExpirySweeper(pinDao, pinHandler, pinExpirySweepStateDao, dynamicConfigSnapshot,
+                serviceMetricsPublisher, clockMillis::get, RateLimiter.create(1_000_000), OWNER, scheduler);
+    }
+
+    @Test
+    public void testResumesFromPersistedCheckpointAndClearsItOnCompletion() {
+        PinExpirySweepState state = PinExpirySweepState.builder().checkpoint("1000").build();
+        when(pinExpirySweepStateDao.tryAcquireLease(eq(OWNER), anyLong(), anyLong())).thenReturn(state);
+        when(pinDao.loadDeactivatingBefore(any(Date.class), eq("1000"), eq(PinExpirySweeper.PAGE_SIZE)))
+                .thenReturn(pins(1001, 2));
+
+        pinExpirySweeper.sweepIfEnabled();
+
+        verify(pinHandler).expireAll(Arrays.asList("1001", "1002"));
+        verify(pinExpirySweepStateDao).saveCheckpoint(eq(state), isNull(String.class), anyLong(),
+                eq(PinExpirySweeper.LEASE_MILLIS));
+        verify(pinExpirySweepStateDao).releaseLease(state);
+    }
+
+    @Test
+    public void testPersistsCheckpointWhenBudgetRunsOut() {
+        PinExpirySweepState state = PinExpirySweepState.builder().build();
+        when(pinExpirySweepStateDao.tryAcquireLease(eq(OWNER), anyLong(), anyLong())).thenReturn(state);
+        when(pinDao.loadDeactivatingBefore(any(Date.class), isNull(String.class), anyInt()))
+                .thenReturn(pins(1, PinExpirySweeper.PAGE_SIZE));
+        doAnswer(invocation -> {
+            clockMillis.addAndGet(PinExpirySweeper.SWEEP_BUDGET_MILLIS);
+            return null;
+        }).when(pinExpirySweepStateDao).saveCheckpoint(eq(state), anyString(), anyLong(), anyLong());
+
+        pinExpirySweeper.sweepIfEnabled();
+
+        verify(pinDao, times(1)).loadDeactivatingBefore(any(Date.class), any(), anyInt());
+        verify(pinHandler, times(1)).expireAll(anyListOf(String.class));
+        verify(pinExpirySweepStateDao).saveCheckpoint(eq(state), eq(String.valueOf(PinExpirySweeper.PAGE_SIZE)),
+                anyLong(), eq(PinExpirySweeper.LEASE_MILLIS));
+        verify(pinExpirySweepStateDao).releaseLease(state);
+    }
+
+    @Test
+    public void testHoldsCheckpointBackToFirstFailedPin() {
+        PinExpirySweepState state = PinExpirySweepState.builder().checkpoint("1000").build();
+        when(pinExpirySweepStateDao.tryAcquireLease(eq(OWNER), anyLong(), anyLong())).thenReturn(state);
+        when(pinDao.loadDeactivatingBefore(any(Date.class), eq("1000"), eq(PinExpirySweeper.PAGE_SIZE)))
+                .thenReturn(pins(1001, 3));
+        when(pinHandler.expireAll(Arrays.asList("1001", "1002", "1003")))
+                .thenReturn(Collections.singletonList("1002"));
+
+        pinExpirySweeper.sweepIfEnabled();
+
+        verify(pinExpirySweepStateDao).saveCheckpoint(eq(state), eq("1001"), anyLong(),
+                eq(PinExpirySweeper.LEASE_MILLIS));
+        verify(pinExpirySweepStateDao).releaseLease(state);
+    }
+
+    @Test
+    public void testKeepsCheckpointWhenWholeBatchFails() {
+        PinExpirySweepState state = PinExpirySweepState.builder().checkpoint("1000").build();
+        when(pinExpirySweepStateDao.tryAcquireLease(eq(OWNER), anyLong(), anyLong())).thenReturn(state);
+        when(pinDao.loadDeactivatingBefore(any(Date.class), eq("1000"), eq(PinExpirySweeper.PAGE_SIZE)))
+                .thenReturn(pins(1001, 2));
+        when(pinHandler.expireAll(anyListOf(String.class))).thenThrow(new IllegalStateException("throttled"));
+
+        pinExpirySweeper.sweepIfEnabled();
+
+        verify(pinExpirySweepStateDao).saveCheckpoint(eq(state), eq("1000"), anyLong(),
+                eq(PinExpirySweeper.LEASE_MILLIS));
+    }
+
+    @Test
+    public void testSkipsSweepWhenLeaseIsHeldElsewhere() {
+        when(pinExpirySweepStateDao.tryAcquireLease(eq(OWNER), anyLong(), anyLong())).thenReturn(null);
+
+        pinExpirySweeper.sweepIfEnabled();
+
+        verify(pinDao, never()).loadDeactivatingBefore(any(Date.class), any(), anyInt());
+        verify(pinExpirySweepStateDao, never()).releaseLease(any(PinExpirySweepState.class));
+    }
+
+    @Test
+    public void testDoesNotSweepWhileDisabled() {
+        when(dynamicConfigSnapshot.getBooleanUncached(PinExpirySweeper.SDC_PIN_EXPIRY_SWEEP, false)).thenReturn(false);
+
+        pinExpirySweeper.sweepIfEnabled();
+
+        verify(pinExpirySweepStateDao, never()).tryAcquireLease(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testReleasesLeaseWhenCheckpointCannotBeSaved() {
+        PinExpirySweepState state = PinExpirySweepState.builder().build();
+        when(pinExpirySweepStateDao.tryAcquireLease(eq(OWNER), anyLong(), anyLong())).thenReturn(state);
+        when(pinDao.loadDeactivatingBefore(any(Date.class), any(), anyInt())).thenReturn(Collections.emptyList());
+        doAnswer(invocation -> {
+            throw new IllegalStateException("lease lost");
+        }).when(pinExpirySweepStateDao).saveCheckpoint(eq(state), any(), anyLong(), anyLong());
+
+        pinExpirySweeper.sweepIfEnabled();
+
+        verify(pinExpirySweepStateDao).releaseLease(state);
+    }
+
+    private static List<Pin> pins(long firstCode, int count) {
+        List<Pin> pins = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            pins.add(Pin.builder().code(String.valueOf(firstCode + i)).build());
+        }
+        return pins;
+    }
+}
@@ -3,7 +3,6 @@ package com.amazonaws.ucbuzzccp.handler;
 
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
 import com.amazonaws.services.ucbuzzprofileservice.model.Profile;
-import com.amazonaws.ucbuzz.meetings.sdc.MeetingsDynamicConfigProvider;
 import com.amazonaws.ucbuzzccp.BadRequestException;
 import com.amazonaws.ucbuzzccp.CreatePinRequest;
 import com.amazonaws.ucbuzzccp.CreatePinResponse;
@@ -16,7 +15,6 @@ import com.amazonaws.ucbuzzccp.ReclaimPinRequest;
 import com.amazonaws.ucbuzzccp.RecreatePinRequest;
 import com.amazonaws.ucbuzzccp.UnprocessableEntityException;
 import com.amazonaws.ucbuzzccp.common.error.CCPError;
-import com.amazonaws.ucbuzzccp.common.identity.CCPIdentityClient;
 import com.amazonaws.ucbuzzccp.common.identity.ProfileNotFoundException;
 import com.amazonaws.ucbuzzccp.common.pin.IllegalReclaimPinRequest;
 import com.amazonaws.ucbuzzccp.common.pin.PinManager;
@@ -27,8 +25,13 @@ import com.amazonaws.ucbuzzccp.dao.PinNotFoundException;
 import com.amazonaws.ucbuzzccp.dao.model.Pin;
 import com.amazonaws.ucbuzzccp.dao.model.PinAlias;
 import com.amazonaws.ucbuzzccp.dao.model.PinType;
+import com.amazonaws.ucbuzzccp.helper.DynamicConfigSnapshot;
+import com.amazonaws.ucbuzzccp.helper.JoinStageLatencies;
+import com.amazonaws.ucbuzzccp.helper.JoinStageLatencies.Stage;
+import com.amazonaws.ucbuzzccp.helper.PinResolutionContext;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
@@ -38,34 +41,96 @@ import javax.inject.Inject;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class PinHandler {
     public static final String SDC_REQUIRE_DEACTIVATE_ON = "RequireDeactivateOn";
+    public static final String SDC_PARALLEL_ATTENDEE_PIN_CREATE = "ParallelAttendeePinCreate";
+    public static final String SDC_PIPELINED_PIN_RECREATE = "PipelinedPinRecreate";
 
     private static List<PinResultFailure> EMPTY_FAILURES_LIST = new ArrayList<>();
     @VisibleForTesting
     static final long DEACTIVATE_ON_THRESHOLD_DAYS = 365;
+    @VisibleForTesting
+    static final int PIN_ALLOCATION_PARALLELISM = 16;
+    @VisibleForTesting
+    static final long BULK_PIN_ALLOCATION_TIMEOUT_SECONDS = 30;
+    @VisibleForTesting
+    static final long RECREATE_READ_TIMEOUT_SECONDS = 5;
+    @VisibleForTesting
+    static final int RECREATE_READ_PARALLELISM = 8;
+    // kept short so a read waits behind a few others at most, beyond that it runs on the caller
+    private static final int RECREATE_READ_QUEUE_CAPACITY = 2 * RECREATE_READ_PARALLELISM;
+    @VisibleForTesting
+    static final int DEFAULT_BULK_RECLAIM_CONCURRENCY = 16;
+    @VisibleForTesting
+    static final int MAXIMUM_BULK_RECLAIM_CONCURRENCY = 64;
+    @VisibleForTesting
+    static final String INVALID_PIN_ENTITY_ERROR_CODE = "InvalidPinEntity";
+    @VisibleForTesting
+    static final String PIN_ALLOCATION_TIMEOUT_ERROR_CODE = "PinAllocationTimeout";
+    @VisibleForTesting
+    static final String PIN_NOT_ALLOCATED_ERROR_CODE = "PinNotAllocated";
 
-    private final CCPIdentityClient identityClient;
     private final PinManager pinManager;
     private final PinAliasHandler pinAliasHandler;
     private final PinAliasDao pinAliasDao;
     private final PinDao pinDao;
-    private final MeetingsDynamicConfigProvider meetingsConfig;
+    private final DynamicConfigSnapshot dynamicConfigSnapshot;
+    private final PinLookupCache pinLookupCache;
+    private final PinAliasIndex pinAliasIndex;
+    private final LivePinFilter livePinFilter;
+    private final OffHeapPinSnapshot offHeapPinSnapshot;
+    private final ProfileCache profileCache;
+    private final JoinStageLatencies joinStageLatencies;
+    private final ExecutorService pinAllocationExecutor;
+    private final ExecutorService recreateReadExecutor;
+    private final ThreadPoolExecutor bulkReclaimExecutor;
 
     @Inject
-    public PinHandler(CCPIdentityClient identityClient, PinManager pinManager, PinAliasHandler pinAliasHandler,
-            PinAliasDao pinAliasDao, PinDao pinDao, MeetingsDynamicConfigProvider meetingsConfig) {
-        this.identityClient = identityClient;
+    public PinHandler(PinManager pinManager, PinAliasHandler pinAliasHandler,
+            PinAliasDao pinAliasDao, PinDao pinDao, DynamicConfigSnapshot dynamicConfigSnapshot,
+            PinLookupCache pinLookupCache, PinAliasIndex pinAliasIndex, LivePinFilter livePinFilter,
+            OffHeapPinSnapshot offHeapPinSnapshot, ProfileCache profileCache, JoinStageLatencies joinStageLatencies) {
         this.pinManager = pinManager;
         this.pinAliasHandler = pinAliasHandler;
         this.pinAliasDao = pinAliasDao;
         this.pinDao = pinDao;
-        this.meetingsConfig = meetingsConfig;
+        this.dynamicConfigSnapshot = dynamicConfigSnapshot;
+        this.pinLookupCache = pinLookupCache;
+        this.pinAliasIndex = pinAliasIndex;
+        this.livePinFilter = livePinFilter;
+        this.offHeapPinSnapshot = offHeapPinSnapshot;
+        this.profileCache = profileCache;
+        this.joinStageLatencies = joinStageLatencies;
+        this.pinAllocationExecutor = Executors.newFixedThreadPool(PIN_ALLOCATION_PARALLELISM,
+                new ThreadFactoryBuilder().setNameFormat("pin-allocation-%d").setDaemon(true).build());
+        this.recreateReadExecutor = new ThreadPoolExecutor(RECREATE_READ_PARALLELISM, RECREATE_READ_PARALLELISM,
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(RECREATE_READ_QUEUE_CAPACITY),
+                new ThreadFactoryBuilder().setNameFormat("pin-recreate-read-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.bulkReclaimExecutor = new ThreadPoolExecutor(MAXIMUM_BULK_RECLAIM_CONCURRENCY,
+                MAXIMUM_BULK_RECLAIM_CONCURRENCY, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("pin-bulk-reclaim-%d").setDaemon(true).build());
+        this.bulkReclaimExecutor.allowCoreThreadTimeOut(true);
     }
 
     private static PinPolicy createPinPolicyFromRequest(com.amazonaws.ucbuzzccp.PinPolicy policy) {
@@ -107,7 +172,28 @@ public class PinHandler {
     }
 
     public void expire(String pin) {
-        pinManager.expire(pin);
+        try {
+            pinManager.expire(pin);
+            livePinFilter.retire(pin);
+        } finally {
+            invalidatePasscode(pin);
+        }
+    }
+
+    /**
+     * Expire the given pins in one batch through {@link PinManager}, pins that no longer exist count as expired.
+     *
+     * @return the codes of the pins that could not be expired
+     */
+    public List<String> expireAll(@NonNull List<String> pins) {
+        try {
+            List<String> unexpired = pinManager.expireAll(pins);
+            Set<String> failed = new HashSet<>(unexpired);
+            pins.stream().filter(pin -> !failed.contains(pin)).forEach(livePinFilter::retire);
+            return unexpired;
+        } finally {
+            pins.forEach(this::invalidatePasscode);
+        }
     }
 
     public CreatePinResponse create(@NonNull CreatePinRequest request) {
@@ -135,8 +221,8 @@ public class PinHandler {
     }
 
     public Pin findPin(String code, boolean throwV2) {
-        String resolvedPasscode = pinAliasHandler.resolveToPasscode(code);
-        Pin pin = pinManager.find(resolvedPasscode);
+        String resolvedPasscode = resolveToPasscode(code);
+        Pin pin = findCached(resolvedPasscode);
         if (pin == null) {
             if(throwV2){
                 throw new com.amazonaws.ucbuzzccp.v2.NotFoundException(
@@ -152,8 +238,8 @@ public class PinHandler {
     }
 
     public Pin findConferencePin(String code, boolean throwV2) {
-        String resolvedPasscode = pinAliasHandler.resolveToPasscode(code);
-        Pin pin = pinManager.find(resolvedPasscode);
+        String resolvedPasscode = resolveToPasscode(code);
+        Pin pin = findCached(resolvedPasscode);
         if (pin == null) {
             if(throwV2){
                 throw new com.amazonaws.ucbuzzccp.v2.NotFoundException(
@@ -165,8 +251,8 @@ public class PinHandler {
     }
 
     public FindPinResponse find(String code) {
-        String resolvedPasscode = pinAliasHandler.resolveToPasscode(code);
-        Pin pin = pinManager.find(resolvedPasscode);
+        String resolvedPasscode = resolveToPasscode(code);
+        Pin pin = findCached(resolvedPasscode);
         if (pin == null) {
             throw new NotFoundException("Unable to locate pin: " + resolvedPasscode);
         } else {
@@ -176,6 +262,57 @@ public class PinHandler {
         }
     }
 
+    private String resolveToPasscode(String code) {
+        long start = System.nanoTime();
+        try {
+            Optional<PinResolutionContext> context = PinResolutionContext.current();
+            if (context.isPresent()) {
+                return context.get().resolveToPasscode(code, this::resolveToPasscodeCached);
+            }
+            return resolveToPasscodeCached(code);
+        } finally {
+            joinStageLatencies.record(Stage.AliasResolution, start);
+        }
+    }
+
+    private String resolveToPasscodeCached(String code) {
+        return pinAliasIndex.resolveToPasscode(code,
+                c -> pinLookupCache.resolveToPasscode(c, pinAliasHandler::resolveToPasscode));
+    }
+
+    private Pin findCached(String passcode) {
+        long start = System.nanoTime();
+        try {
+            Optional<PinResolutionContext> context = PinResolutionContext.current();
+            if (context.isPresent()) {
+                return context.get().findPin(passcode, this::findCachedUnscoped);
+            }
+            return findCachedUnscoped(passcode);
+        } finally {
+            joinStageLatencies.record(Stage.PinFetch, start);
+        }
+    }
+
+    private Pin findCachedUnscoped(String passcode) {
+        if (!livePinFilter.mightBeLive(passcode)) {
+            return null;
+        }
+        return pinLookupCache.find(passcode, this::findInSnapshotOrLoad).orElse(null);
+    }
+
+    private Pin findInSnapshotOrLoad(String passcode) {
+        Pin pin = offHeapPinSnapshot.find(passcode);
+        return pin != null ? pin : pinManager.find(passcode);
+    }
+
+    /**
+     * Drops every copy of the pin this host keeps, to be called whenever the pin is written.
+     */
+    private void invalidatePasscode(String passcode) {
+        pinLookupCache.invalidatePasscode(passcode);
+        offHeapPinSnapshot.invalidate(passcode);
+    }
+
     private Profile resolveProfile(PinEntity e) {
         if (e.getEntityId() == null && e.getEmail() == null) {
             throw new BadRequestException("Not enough PinEntity information to resolve profile id ");
@@ -220,6 +357,8 @@ public class PinHandler {
         List<PinEntity> entities = request.getEntities();
         Profile profile = resolveProfile(entities.get(0));
         String pin = pinManager.findOrCreatePersonalPin(profile).getCode();
+        invalidatePasscode(pin);
+        livePinFilter.put(pin);
 
         return createPinResponse(
                 Collections.singletonList(getPinResult(profile.getProfileId(), entities.get(0).getEmail(), pin)),
@@ -232,6 +371,8 @@ public class PinHandler {
         List<PinEntity> entities = request.getEntities();
         Profile profile = resolveProfile(entities.get(0));
         String pin = pinManager.generate(PinType.Conference, profile.getProfileId(), policy);
+        invalidatePasscode(pin);
+        livePinFilter.put(pin);
         if (!StringUtils.isEmpty(request.getModeratorCode())) {
             pinManager.updateModeratorInfo(pin, request.getModeratorCode());
         }
@@ -255,7 +396,7 @@ public class PinHandler {
     }
 
     private boolean isDeactivateOnAbsent(PinPolicy policy) {
-        return meetingsConfig.getBoolean(SDC_REQUIRE_DEACTIVATE_ON, false) &&
+        return dynamicConfigSnapshot.getBoolean(SDC_REQUIRE_DEACTIVATE_ON, false) &&
                 (policy == null || policy.getDeactivateOn() == null);
     }
 
@@ -274,8 +415,8 @@ public class PinHandler {
         if (policy.getBasePin() == null) {
             throw new BadRequestException("Attendee pin create requires a base pin.");
         }
-        String passcode = pinAliasHandler.resolveToPasscode(policy.getBasePin());
-        Pin findResult = pinManager.find(passcode);
+        String passcode = resolveToPasscode(policy.getBasePin());
+        Pin findResult = findCached(passcode);
         if (findResult == null) {
             throw new BadRequestException("Attendee pin create provided non-existent base pin.");
         }
@@ -284,16 +425,113 @@ public class PinHandler {
         policy.setMinLength(3);
         policy.setMaxLength(3);
 
+        if (entities.size() > 1 && dynamicConfigSnapshot.getBoolean(SDC_PARALLEL_ATTENDEE_PIN_CREATE, false)) {
+            return handleBulkAttendeePinCreate(policy, entities);
+        }
+
         List<PinResult> pinResults = new ArrayList<>();
         for (PinEntity pe: entities) {
-            Profile profile = resolveProfile(pe);
-            String pin  = pinManager.generate(PinType.Attendee, profile.getProfileId(), policy);
-            pinResults.add(getPinResult(profile.getProfileId(), pe.getEmail(), pin));
+            pinResults.add(allocateAttendeePin(policy, pe));
         }
 
         return createPinResponse(pinResults, EMPTY_FAILURES_LIST);
     }
 
+    /**
+     * Allocates attendee pins concurrently on the bounded pin allocation pool. Unlike the serial path a failure
+     * for one entity doesn't abort the request, it is reported back as a {@link PinResultFailure} instead.
+     *
+     * Once the timeout passes, allocations that haven't started are skipped and reported as timed out. Allocations
+     * already generating may have written their pin, so they are waited for and reported with their actual outcome,
+     * otherwise a retry of the entity would create a second pin.
+     */
+    private CreatePinResponse handleBulkAttendeePinCreate(PinPolicy policy, List<PinEntity> entities) {
+        List<Future<PinResult>> allocations = new ArrayList<>(entities.size());
+        // set by whichever comes first, the allocation starting or the caller giving up on it
+        List<AtomicBoolean> claims = new ArrayList<>(entities.size());
+        for (PinEntity pe: entities) {
+            AtomicBoolean claim = new AtomicBoolean();
+            claims.add(claim);
+            allocations.add(pinAllocationExecutor.submit(
+                    () -> claim.compareAndSet(false, true) ? allocateAttendeePin(policy, pe) : null));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(BULK_PIN_ALLOCATION_TIMEOUT_SECONDS);
+        List<PinResult> pinResults = new ArrayList<>();
+        List<PinResultFailure> failures = new ArrayList<>();
+        for (int i = 0; i < entities.size(); i++) {
+            PinEntity pe = entities.get(i);
+            Future<PinResult> allocation = allocations.get(i);
+            try {
+                PinResult pinResult;
+                try {
+                    pinResult = allocation.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (claims.get(i).compareAndSet(false, true)) {
+                        allocation.cancel(false);
+                        failures.add(getPinResultFailure(pe, e));
+                        continue;
+                    }
+                    log.info("Waiting for in-flight attendee pin allocation of entity {}", pe.getEntityId());
+                    pinResult = allocation.get();
+                }
+                pinResults.add(pinResult);
+            } catch (ExecutionException e) {
+                log.warn("Attendee pin allocation failed for entity {}", pe.getEntityId(), e.getCause());
+                failures.add(getPinResultFailure(pe, e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                allocations.forEach(a -> a.cancel(true));
+                throw new IllegalStateException("Interrupted while allocating attendee pins", e);
+            }
+        }
+        log.info("Bulk attendee pin create allocated {} pins with {} failures", pinResults.size(), failures.size());
+        return createPinResponse(pinResults, failures);
+    }
+
+    private PinResult allocateAttendeePin(PinPolicy policy, PinEntity pe) {
+        Profile profile = resolveProfile(pe);
+        String pin  = pinManager.generate(PinType.Attendee, profile.getProfileId(), policy);
+        invalidatePasscode(pin);
+        livePinFilter.put(pin);
+        return getPinResult(profile.getProfileId(), pe.getEmail(), pin);
+    }
+
+    private PinResultFailure getPinResultFailure(PinEntity e, Throwable cause) {
+        return PinResultFailure.builder()
+            .withEntityId(e.getEntityId())
+            .withEmail(e.getEmail())
+            .withErrorCode(getErrorCode(cause))
+            .withErrorMessage(getErrorMessage(cause))
+            .build();
+    }
+
+    /**
+     * Maps the failure of one allocation to an error code of the API, so no implementation type leaks out.
+     */
+    private static String getErrorCode(Throwable cause) {
+        if (cause instanceof NotFoundException) {
+            return CCPError.ProfileNotFound.name();
+        }
+        if (cause instanceof BadRequestException) {
+            return INVALID_PIN_ENTITY_ERROR_CODE;
+        }
+        if (cause instanceof TimeoutException) {
+            return PIN_ALLOCATION_TIMEOUT_ERROR_CODE;
+        }
+        return PIN_NOT_ALLOCATED_ERROR_CODE;
+    }
+
+    private static String getErrorMessage(Throwable cause) {
+        if (cause instanceof NotFoundException || cause instanceof BadRequestException) {
+            return cause.getMessage();
+        }
+        if (cause instanceof TimeoutException) {
+            return "Timed out allocating attendee pin";
+        }
+        return "Unable to allocate attendee pin";
+    }
+
     public void reclaim(ReclaimPinRequest request) {
         validateReclaimPinRequest(request);
         Profile pinOwnerProfile = resolveProfile(Optional.ofNullable(request.getPinOwnerProfileId()),
@@ -303,19 +541,112 @@ public class PinHandler {
 
     public Pin reclaim(String pin, Profile pinOwnerProfile) {
         try {
-            return pinManager.reclaim(pin, pinOwnerProfile.getProfileId());
+            Pin reclaimed = pinManager.reclaim(pin, pinOwnerProfile.getProfileId());
+            livePinFilter.retire(pin);
+            return reclaimed;
         } catch (PinNotFoundException e) {
             throw new NotFoundException(CCPError.PinNotFound.name());
         } catch (IllegalReclaimPinRequest | ConditionalCheckFailedException e) {
             throw new UnprocessableEntityException(CCPError.PinNotReclaimed.name());
+        } finally {
+            invalidatePasscode(pin);
+        }
+    }
+
+    public List<ReclaimPinResult> bulkReclaim(List<ReclaimPinRequest> requests) {
+        return bulkReclaim(requests, DEFAULT_BULK_RECLAIM_CONCURRENCY);
+    }
+
+    /**
+     * Reclaims many pins, e.g. when offboarding an organization, running up to the given number of reclaims at a
+     * time. Unlike {@link #reclaim(ReclaimPinRequest)} pins aren't read before they are reclaimed, a missing pin is
+     * reported by the reclaim itself. A failure for one pin doesn't abort the others, results are returned in request
+     * order. Reclaims run on a pool shared by every bulk reclaim, so concurrent calls together never use more than
+     * {@link #MAXIMUM_BULK_RECLAIM_CONCURRENCY} threads.
+     */
+    public List<ReclaimPinResult> bulkReclaim(List<ReclaimPinRequest> requests, int concurrency) {
+        try {
+            Validate.inclusiveBetween(1, MAXIMUM_BULK_RECLAIM_CONCURRENCY, concurrency,
+                    "Concurrency must be between 1 and " + MAXIMUM_BULK_RECLAIM_CONCURRENCY);
+            requests.forEach(this::validateReclaimPinRequestFields);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            String message = "Bulk reclaim pin request doesn't satisfy requirements";
+            log.error(message, e);
+            throw new BadRequestException(message, e);
+        }
+        if (requests.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // each worker takes the next unclaimed request until none is left, results land in request order
+        ReclaimPinResult[] results = new ReclaimPinResult[requests.size()];
+        AtomicInteger next = new AtomicInteger();
+        Runnable worker = () -> {
+            for (int i = next.getAndIncrement(); i < results.length; i = next.getAndIncrement()) {
+                results[i] = reclaimOrFail(requests.get(i));
+            }
+        };
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(concurrency, requests.size()); i++) {
+            workers.add(bulkReclaimExecutor.submit(worker));
         }
+        try {
+            for (Future<?> w : workers) {
+                w.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unexpected bulk reclaim failure", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reclaiming pins", e);
+        } finally {
+            // stops the remaining workers early when the wait failed, a no-op otherwise
+            next.set(results.length);
+            workers.forEach(w -> w.cancel(true));
+        }
+        List<ReclaimPinResult> reclaimed = Arrays.asList(results);
+        log.info("Bulk reclaim of {} pins had {} failures", reclaimed.size(),
+                reclaimed.stream().filter(r -> !r.isReclaimed()).count());
+        return reclaimed;
+    }
+
+    private ReclaimPinResult reclaimOrFail(ReclaimPinRequest request) {
+        String pin = request.getPin();
+        Profile pinOwnerProfile;
+        try {
+            pinOwnerProfile = resolveProfile(Optional.ofNullable(request.getPinOwnerProfileId()),
+                    Optional.ofNullable(request.getPinOwnerEmail()));
+        } catch (NotFoundException e) {
+            return ReclaimPinResult.failed(pin, CCPError.ProfileNotFound);
+        } catch (RuntimeException e) {
+            log.warn("Unable to resolve pin owner of a bulk reclaim", e);
+            return ReclaimPinResult.failed(pin, CCPError.PinNotReclaimed);
+        }
+        try {
+            pinManager.reclaim(pin, pinOwnerProfile.getProfileId());
+            livePinFilter.retire(pin);
+            return ReclaimPinResult.reclaimed(pin);
+        } catch (PinNotFoundException e) {
+            return ReclaimPinResult.failed(pin, CCPError.PinNotFound);
+        } catch (IllegalReclaimPinRequest | ConditionalCheckFailedException e) {
+            return ReclaimPinResult.failed(pin, CCPError.PinNotReclaimed);
+        } catch (RuntimeException e) {
+            log.warn("Unable to reclaim pin for owner {}", pinOwnerProfile.getProfileId(), e);
+            return ReclaimPinResult.failed(pin, CCPError.PinNotReclaimed);
+        } finally {
+            invalidatePasscode(pin);
+        }
+    }
+
+    private void validateReclaimPinRequestFields(ReclaimPinRequest request) {
+        Validate.notEmpty(request.getPin(), "Pin required");
+        Validate.isTrue(request.getPinOwnerProfileId() != null || request.getPinOwnerEmail() != null,
+                "Pin owner profile id or email required");
     }
 
     private void validateReclaimPinRequest(ReclaimPinRequest request) {
         try {
-            Validate.notEmpty(request.getPin(), "Pin required");
-            Validate.isTrue(request.getPinOwnerProfileId() != null || request.getPinOwnerEmail() != null,
-                    "Pin owner profile id or email required");
+            validateReclaimPinRequestFields(request);
             validatePinExists(request.getPin());
         } catch (IllegalArgumentException | NullPointerException e) {
             String message = "Reclaim pin request doesn't satisfy requirements";
@@ -324,24 +655,45 @@ public class PinHandler {
         }
     }
 
+    /**
+     * Recreates the personal pin of the owner. When pipelined recreate is on the current pin is read while the owner
+     * profile resolves and the pin alias is read while the old pin expires, and the new pin and its alias are written
+     * in a single transaction. The old pin is still only expired if it belongs to the owner and no new pin is created
+     * when that check fails. The reads run on a small pool of their own so they never queue behind bulk pin creates,
+     * when that pool is busy a read runs on the calling thread, which falls back to the sequential order.
+     */
     public CreatePinResponse recreate(RecreatePinRequest request) {
         try {
             validateRecreatePinRequest(request);
+            boolean pipelined = dynamicConfigSnapshot.getBoolean(SDC_PIPELINED_PIN_RECREATE, false);
+            CompletableFuture<Pin> currentPinRead = pipelined
+                    ? CompletableFuture.supplyAsync(() -> pinManager.find(request.getPin()), recreateReadExecutor)
+                    : null;
             Profile pinOwnerProfile = resolveProfile(
                     Optional.ofNullable(request.getPinOwnerProfileId()),
                     Optional.ofNullable(request.getPinOwnerEmail()));
 
-            Pin currentPin = pinManager.find(request.getPin());
+            Pin currentPin = pipelined ? awaitRecreateRead(currentPinRead) : pinManager.find(request.getPin());
             if (currentPin == null) {
                 throw new NotFoundException(CCPError.PinNotFound.name());
             }
+            String alias = currentPin.getAlias();
+            CompletableFuture<PinAlias> pinAliasRead = pipelined && alias != null
+                    ? CompletableFuture.supplyAsync(() -> pinAliasDao.getAlias(alias), recreateReadExecutor)
+                    : null;
 
             pinManager.conditionalExpire(request.getPin(), pinOwnerProfile.getProfileId());
+            invalidatePasscode(request.getPin());
+            livePinFilter.retire(request.getPin());
 
             Pin newPin = pinManager.findOrCreatePersonalPin(pinOwnerProfile);
+            invalidatePasscode(newPin.getCode());
+            livePinFilter.put(newPin.getCode());
 
-            if (currentPin.getAlias() != null) {
-                updatePinAlias(currentPin.getAlias(), newPin);
+            if (pinAliasRead != null) {
+                updatePinAndAlias(alias, awaitRecreateRead(pinAliasRead), newPin);
+            } else if (alias != null) {
+                updatePinAlias(alias, newPin);
             }
 
             return CreatePinResponse.builder()
@@ -367,10 +719,52 @@ public class PinHandler {
         }
         log.info("Pin alias exists, updating");
         pinAlias.setCode(newPin.getCode());
-        pinAliasDao.update(pinAlias);
+        try {
+            pinAliasDao.update(pinAlias);
+            pinAliasIndex.put(alias, newPin.getCode());
+
+            newPin.setAlias(alias);
+            pinDao.update(newPin);
+        } finally {
+            pinLookupCache.invalidateAlias(alias);
+            invalidatePasscode(newPin.getCode());
+        }
+    }
 
+    /**
+     * Points the alias at the new pin and the new pin at the alias in one transactional write.
+     */
+    private void updatePinAndAlias(@NonNull String alias, PinAlias pinAlias, @NonNull Pin newPin) {
+        if (pinAlias == null) {
+            log.error("Unexpected: pin alias doesn't exist");
+            return;
+        }
+        pinAlias.setCode(newPin.getCode());
         newPin.setAlias(alias);
-        pinDao.update(newPin);
+        try {
+            pinDao.updateWithAlias(newPin, pinAlias);
+            pinAliasIndex.put(alias, newPin.getCode());
+        } finally {
+            pinLookupCache.invalidateAlias(alias);
+            invalidatePasscode(newPin.getCode());
+        }
+    }
+
+    private static <T> T awaitRecreateRead(CompletableFuture<T> read) {
+        try {
+            return read.get(RECREATE_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Pin recreate read failed", e.getCause());
+        } catch (TimeoutException e) {
+            read.cancel(true);
+            throw new IllegalStateException("Timed out waiting for pin recreate read", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for pin recreate read", e);
+        }
     }
 
     private void validateRecreatePinRequest(RecreatePinRequest request) {
@@ -389,9 +783,9 @@ public class PinHandler {
     private Profile resolveProfile(Optional<String> profileId, Optional<String> profileEmail) {
         try {
             if (profileId.isPresent()) {
-                return identityClient.getProfile(profileId.get());
+                return profileCache.getProfile(profileId.get());
             } else {
-                return identityClient.getProfileByEmail(profileEmail.get());
+                return profileCache.getProfileByEmail(profileEmail.get());
             }
         } catch (ProfileNotFoundException e) {
             throw new NotFoundException(CCPError.ProfileNotFound.name());
@@ -401,12 +795,12 @@ public class PinHandler {
     private Profile resolveOrCreateProfile(Optional<String> profileId, Optional<String> profileEmail) {
         try {
             if (profileId.isPresent()) {
-                return identityClient.getProfile(profileId.get());
+                return profileCache.getProfile(profileId.get());
             } else {
                 if (StringUtils.isBlank(profileEmail.get())) {
                     throw new BadRequestException("Email must not be blank");
                 }
-                return identityClient.getOrRegisterProfileByEmail(profileEmail.get(), true);
+                return profileCache.getOrRegisterProfileByEmail(profileEmail.get());
             }
         } catch (ProfileNotFoundException e) {
             throw new NotFoundException(CCPError.ProfileNotFound.name());
@@ -0,0 +1,197 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.services.ucbuzzprofileservice.model.Profile;
+import com.amazonaws.ucbuzzccp.CreatePinRequest;
+import com.amazonaws.ucbuzzccp.CreatePinResponse;
+import com.amazonaws.ucbuzzccp.NotFoundException;
+import com.amazonaws.ucbuzzccp.PinEntity;
+import com.amazonaws.ucbuzzccp.PinResult;
+import com.amazonaws.ucbuzzccp.PinResultFailure;
+import com.amazonaws.ucbuzzccp.ReclaimPinRequest;
+import com.amazonaws.ucbuzzccp.common.error.CCPError;
+import com.amazonaws.ucbuzzccp.common.identity.ProfileNotFoundException;
+import com.amazonaws.ucbuzzccp.common.pin.PinManager;
+import com.amazonaws.ucbuzzccp.common.pin.PinPolicy;
+import com.amazonaws.ucbuzzccp.dao.PinAliasDao;
+import com.amazonaws.ucbuzzccp.dao.PinDao;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.dao.model.PinType;
+import com.amazonaws.ucbuzzccp.helper.DynamicConfigSnapshot;
+import com.amazonaws.ucbuzzccp.helper.JoinStageLatencies;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class PinHandlerTest {
+    private static final String BASE_PIN = "1234567890";
+    private static final Pin BASE_PIN_MODEL = Pin.builder().code(BASE_PIN).type(PinType.Conference.name()).build();
+
+    @Mock
+    private PinManager pinManager;
+    @Mock
+    private PinAliasHandler pinAliasHandler;
+    @Mock
+    private PinAliasDao pinAliasDao;
+    @Mock
+    private PinDao pinDao;
+    @Mock
+    private DynamicConfigSnapshot dynamicConfigSnapshot;
+    @Mock
+    private PinAliasIndex pinAliasIndex;
+    @Mock
+    private LivePinFilter livePinFilter;
+    @Mock
+    private OffHeapPinSnapshot offHeapPinSnapshot;
+    @Mock
+    private ProfileCache profileCache;
+    @Mock
+    private JoinStageLatencies joinStageLatencies;
+
+    private PinHandler pinHandler;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(dynamicConfigSnapshot.getBoolean(anyString(), anyBoolean()))
+                .thenAnswer(invocation -> invocation.getArguments()[1]);
+        when(dynamicConfigSnapshot.getBoolean(eq(PinHandler.SDC_PARALLEL_ATTENDEE_PIN_CREATE), anyBoolean()))
+                .thenReturn(true);
+        when(pinAliasIndex.resolveToPasscode(anyString(), any(Function.class)))
+                .thenAnswer(invocation -> invocation.getArguments()[0]);
+        when(livePinFilter.mightBeLive(anyString())).thenReturn(true);
+        when(pinManager.find(BASE_PIN)).thenReturn(BASE_PIN_MODEL);
+        when(profileCache.getProfile(anyString())).thenAnswer(invocation ->
+                new Profile().withProfileId((String) invocation.getArguments()[0]));
+
+        pinHandler = new PinHandler(pinManager, pinAliasHandler, pinAliasDao, pinDao, dynamicConfigSnapshot,
+                new PinLookupCache(), pinAliasIndex, livePinFilter, offHeapPinSnapshot, profileCache,
+                joinStageLatencies);
+    }
+
+    @Test
+    public void testLivePinFilterMissSkipsRead() {
+        when(livePinFilter.mightBeLive(BASE_PIN)).thenReturn(false);
+
+        try {
+            pinHandler.findPin(BASE_PIN);
+            fail("Expected NotFoundException");
+        } catch (NotFoundException e) {
+            verify(pinManager, never()).find(BASE_PIN);
+        }
+    }
+
+    @Test
+    public void testExpireRetiresPinFromLivePinFilter() {
+        pinHandler.expire(BASE_PIN);
+
+        verify(pinManager).expire(BASE_PIN);
+        verify(livePinFilter).retire(BASE_PIN);
+        verify(offHeapPinSnapshot).invalidate(BASE_PIN);
+    }
+
+    @Test
+    public void testExpireAllRetiresOnlyExpiredPins() {
+        when(pinManager.expireAll(Arrays.asList(BASE_PIN, "1111111111")))
+                .thenReturn(Collections.singletonList("1111111111"));
+
+        assertEquals(Collections.singletonList("1111111111"),
+                pinHandler.expireAll(Arrays.asList(BASE_PIN, "1111111111")));
+
+        verify(livePinFilter).retire(BASE_PIN);
+        verify(livePinFilter, never()).retire("1111111111");
+        verify(offHeapPinSnapshot).invalidate(BASE_PIN);
+        verify(offHeapPinSnapshot).invalidate("1111111111");
+    }
+
+    @Test
+    public void testPinInSnapshotIsServedWithoutRead() {
+        Pin snapshotPin = Pin.builder().code("1111111111").type(PinType.Conference.name()).build();
+        when(offHeapPinSnapshot.find("1111111111")).thenReturn(snapshotPin);
+
+        assertEquals(snapshotPin, pinHandler.findPin("1111111111"));
+        verify(pinManager, never()).find("1111111111");
+    }
+
+    @Test
+    public void testBulkAttendeePinCreateKeepsRequestOrderAndReportsFailures() throws Exception {
+        when(pinManager.generate(eq(PinType.Attendee), eq("entity-0"), any(PinPolicy.class))).thenAnswer(invocation -> {
+            Thread.sleep(50);
+            return BASE_PIN + "000";
+        });
+        when(profileCache.getProfile("entity-1")).thenThrow(new ProfileNotFoundException("not found"));
+        when(pinManager.generate(eq(PinType.Attendee), eq("entity-2"), any(PinPolicy.class)))
+                .thenReturn(BASE_PIN + "002");
+        when(pinManager.generate(eq(PinType.Attendee), eq("entity-3"), any(PinPolicy.class)))
+                .thenThrow(new IllegalStateException("Injected allocation failure"));
+        when(pinManager.generate(eq(PinType.Attendee), eq("entity-4"), any(PinPolicy.class)))
+                .thenReturn(BASE_PIN + "004");
+
+        CreatePinResponse response = pinHandler.create(attendeePinRequest(5));
+
+        List<PinResult> allocated = response.getAllocatedPins();
+        assertEquals(Arrays.asList("entity-0", "entity-2", "entity-4"),
+                allocated.stream().map(PinResult::getEntityId).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(BASE_PIN + "000", BASE_PIN + "002", BASE_PIN + "004"),
+                allocated.stream().map(PinResult::getPin).collect(Collectors.toList()));
+
+        List<PinResultFailure> failures = response.getPinResultFailure();
+        assertEquals(Arrays.asList("entity-1", "entity-3"),
+                failures.stream().map(PinResultFailure::getEntityId).collect(Collectors.toList()));
+        assertEquals(CCPError.ProfileNotFound.name(), failures.get(0).getErrorCode());
+        assertEquals(PinHandler.PIN_NOT_ALLOCATED_ERROR_CODE, failures.get(1).getErrorCode());
+    }
+
+    @Test
+    public void testBulkReclaimReportsEveryFailureInRequestOrder() throws Exception {
+        when(profileCache.getProfile("owner-1")).thenThrow(new IllegalStateException("Identity service unavailable"));
+        when(pinManager.reclaim("pin-2", "owner-2")).thenThrow(new IllegalStateException("Throttled"));
+
+        List<ReclaimPinResult> results = pinHandler.bulkReclaim(Arrays.asList(
+                reclaimPinRequest("pin-0", "owner-0"),
+                reclaimPinRequest("pin-1", "owner-1"),
+                reclaimPinRequest("pin-2", "owner-2"),
+                reclaimPinRequest("pin-3", "owner-3")), 2);
+
+        assertEquals(Arrays.asList("pin-0", "pin-1", "pin-2", "pin-3"),
+                results.stream().map(ReclaimPinResult::getPin).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(null, CCPError.PinNotReclaimed, CCPError.PinNotReclaimed, null),
+                results.stream().map(ReclaimPinResult::getError).collect(Collectors.toList()));
+    }
+
+    private static ReclaimPinRequest reclaimPinRequest(String pin, String pinOwnerProfileId) {
+        return ReclaimPinRequest.builder().withPin(pin).withPinOwnerProfileId(pinOwnerProfileId).build();
+    }
+
+    private static CreatePinRequest attendeePinRequest(int entities) {
+        List<PinEntity> pinEntities = new ArrayList<>();
+        for (int i = 0; i < entities; i++) {
+            pinEntities.add(PinEntity.builder().withEntityId("entity-" + i).build());
+        }
+        return CreatePinRequest.builder()
+                .withPinType(PinType.Attendee.name())
+                .withPinPolicy(com.amazonaws.ucbuzzccp.PinPolicy.builder().withBasePin(BASE_PIN).build())
+                .withEntities(pinEntities)
+                .build();
+    }
+}
@@ -0,0 +1,195 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import lombok.NonNull;
+
+import javax.inject.Inject;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * In-process read-through cache in front of alias resolution and pin lookup.
+ *
+ * Unknown codes are cached negatively with a shorter TTL than found pins. Every write path in
+ * {@link PinHandler} that can change what a code resolves to must call one of the invalidate methods.
+ * Loads that were in flight while their key was invalidated are returned to their caller but not stored. Keys are
+ * tracked in a fixed number of generation stripes, so an invalidation only discards the in-flight loads of keys
+ * sharing its stripe. Aliases are also indexed by the passcode they resolve to, so invalidating a passcode drops its
+ * aliases without scanning the cache.
+ */
+public class PinLookupCache {
+    @VisibleForTesting
+    static final long DEFAULT_MAXIMUM_SIZE = 100_000;
+    @VisibleForTesting
+    static final long DEFAULT_PIN_TTL_SECONDS = 60;
+    @VisibleForTesting
+    static final long DEFAULT_NEGATIVE_TTL_SECONDS = 10;
+    @VisibleForTesting
+    static final int GENERATION_STRIPES = 1024;
+
+    private final Cache<String, String> aliasCache;
+    private final Cache<String, Pin> pinCache;
+    private final Cache<String, Boolean> negativeCache;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final ConcurrentMap<String, Set<String>> aliasesByPasscode = new ConcurrentHashMap<>();
+
+    @Inject
+    public PinLookupCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_PIN_TTL_SECONDS, DEFAULT_NEGATIVE_TTL_SECONDS);
+    }
+
+    @VisibleForTesting
+    PinLookupCache(long maximumSize, long pinTtlSeconds, long negativeTtlSeconds) {
+        this.aliasCache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(pinTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .removalListener((RemovalListener<String, String>) removal ->
+                        unlinkAlias(removal.getKey(), removal.getValue()))
+                .build();
+        this.pinCache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(pinTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.negativeCache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(negativeTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public String resolveToPasscode(@NonNull String code, @NonNull Function<String, String> resolver) {
+        String passcode = aliasCache.getIfPresent(code);
+        if (passcode != null) {
+            return passcode;
+        }
+        long loadGeneration = generation(code);
+        passcode = resolver.apply(code);
+        if (passcode != null && loadGeneration == generation(code)) {
+            linkAlias(code, passcode);
+            aliasCache.put(code, passcode);
+        }
+        return passcode;
+    }
+
+    /**
+     * @return the cached or loaded pin, or empty when the loader reported that the passcode doesn't exist
+     */
+    public Optional<Pin> find(@NonNull String passcode, @NonNull Function<String, Pin> loader) {
+        if (negativeCache.getIfPresent(passcode) != null) {
+            return Optional.empty();
+        }
+        Pin pin = pinCache.getIfPresent(passcode);
+        if (pin != null) {
+            return Optional.of(pin);
+        }
+        long loadGeneration = generation(passcode);
+        pin = loader.apply(passcode);
+        boolean cacheable = loadGeneration == generation(passcode);
+        if (pin == null) {
+            if (cacheable) {
+                negativeCache.put(passcode, Boolean.TRUE);
+            }
+            return Optional.empty();
+        }
+        if (cacheable) {
+            pinCache.put(passcode, pin);
+        }
+        return Optional.of(pin);
+    }
+
+    /**
+     * Drop the pin stored under the given passcode together with any alias that resolved to it.
+     */
+    public void invalidatePasscode(String passcode) {
+        if (passcode == null) {
+            return;
+        }
+        advance(passcode);
+        pinCache.invalidate(passcode);
+        negativeCache.invalidate(passcode);
+        aliasCache.invalidate(passcode);
+        Set<String> aliases = aliasesByPasscode.remove(passcode);
+        if (aliases != null) {
+            aliasCache.invalidateAll(aliases);
+        }
+    }
+
+    public void invalidateAlias(String alias) {
+        if (alias == null) {
+            return;
+        }
+        advance(alias);
+        aliasCache.invalidate(alias);
+        negativeCache.invalidate(alias);
+    }
+
+    public void invalidateAll() {
+        for (int stripe = 0; stripe < GENERATION_STRIPES; stripe++) {
+            generations.incrementAndGet(stripe);
+        }
+        aliasCache.invalidateAll();
+        pinCache.invalidateAll();
+        negativeCache.invalidateAll();
+    }
+
+    private long generation(String key) {
+        return generations.get(stripe(key));
+    }
+
+    private void advance(String key) {
+        generations.incrementAndGet(stripe(key));
+    }
+
+    @VisibleForTesting
+    static int stripe(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    /**
+     * Codes that resolve to themselves aren't indexed, invalidating the passcode drops them directly.
+     */
+    private void linkAlias(String alias, String passcode) {
+        if (!alias.equals(passcode)) {
+            aliasesByPasscode.computeIfAbsent(passcode, p -> ConcurrentHashMap.newKeySet()).add(alias);
+        }
+    }
+
+    private void unlinkAlias(String alias, String passcode) {
+        // a replacement by the same passcode keeps the link
+        if (alias == null || passcode == null || alias.equals(passcode)
+                || passcode.equals(aliasCache.getIfPresent(alias))) {
+            return;
+        }
+        aliasesByPasscode.computeIfPresent(passcode, (p, aliases) -> {
+            aliases.remove(alias);
+            return aliases.isEmpty() ? null : aliases;
+        });
+    }
+
+    /**
+     * @return the hit and miss counts of found pins since startup
+     */
+    public CacheStats pinStats() {
+        return pinCache.stats();
+    }
+
+    @VisibleForTesting
+    long size() {
+        return aliasCache.size() + pinCache.size() + negativeCache.size();
+    }
+}
@@ -0,0 +1,104 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.common.pin.PinManager;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PinLookupCacheTest {
+    private static final String ALIAS = "alias";
+    private static final String PASSCODE = "1234567890";
+    private static final Pin PIN = Pin.builder().code(PASSCODE).build();
+
+    @Mock
+    private PinManager pinManager;
+    @Mock
+    private PinAliasHandler pinAliasHandler;
+
+    private PinLookupCache pinLookupCache;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        pinLookupCache = new PinLookupCache(100, 60, 60);
+        when(pinAliasHandler.resolveToPasscode(ALIAS)).thenReturn(PASSCODE);
+        when(pinManager.find(PASSCODE)).thenReturn(PIN);
+    }
+
+    @Test
+    public void testRepeatedLookupsHitCache() {
+        for (int i = 0; i < 3; i++) {
+            String passcode = pinLookupCache.resolveToPasscode(ALIAS, pinAliasHandler::resolveToPasscode);
+            assertEquals(PIN, pinLookupCache.find(passcode, pinManager::find).get());
+        }
+        verify(pinAliasHandler, times(1)).resolveToPasscode(ALIAS);
+        verify(pinManager, times(1)).find(PASSCODE);
+    }
+
+    @Test
+    public void testUnknownPasscodeIsCachedNegatively() {
+        assertFalse(pinLookupCache.find("unknown", pinManager::find).isPresent());
+        assertFalse(pinLookupCache.find("unknown", pinManager::find).isPresent());
+        verify(pinManager, times(1)).find("unknown");
+    }
+
+    @Test
+    public void testInvalidatePasscodeDropsPinAndAliases() {
+        pinLookupCache.resolveToPasscode(ALIAS, pinAliasHandler::resolveToPasscode);
+        pinLookupCache.find(PASSCODE, pinManager::find);
+
+        pinLookupCache.invalidatePasscode(PASSCODE);
+
+        pinLookupCache.resolveToPasscode(ALIAS, pinAliasHandler::resolveToPasscode);
+        assertTrue(pinLookupCache.find(PASSCODE, pinManager::find).isPresent());
+        verify(pinAliasHandler, times(2)).resolveToPasscode(ALIAS);
+        verify(pinManager, times(2)).find(PASSCODE);
+    }
+
+    @Test
+    public void testInvalidatePasscodeClearsNegativeEntry() {
+        when(pinManager.find("new-pin")).thenReturn(null, PIN);
+        assertFalse(pinLookupCache.find("new-pin", pinManager::find).isPresent());
+
+        pinLookupCache.invalidatePasscode("new-pin");
+
+        assertTrue(pinLookupCache.find("new-pin", pinManager::find).isPresent());
+    }
+
+    @Test
+    public void testInvalidationDiscardsInFlightLoadOfSamePasscode() {
+        pinLookupCache.find(PASSCODE, passcode -> {
+            pinLookupCache.invalidatePasscode(PASSCODE);
+            return PIN;
+        });
+
+        pinLookupCache.find(PASSCODE, pinManager::find);
+        verify(pinManager, times(1)).find(PASSCODE);
+    }
+
+    @Test
+    public void testInvalidationKeepsInFlightLoadOfOtherPasscode() {
+        String otherPasscode = "0987654321";
+        assertNotEquals(PinLookupCache.stripe(PASSCODE), PinLookupCache.stripe(otherPasscode));
+
+        pinLookupCache.find(PASSCODE, passcode -> {
+            pinLookupCache.invalidatePasscode(otherPasscode);
+            return PIN;
+        });
+
+        assertTrue(pinLookupCache.find(PASSCODE, pinManager::find).isPresent());
+        verify(pinManager, times(0)).find(PASSCODE);
+    }
+}
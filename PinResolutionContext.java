@@ -0,0 +1,93 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.amazonaws.ucbuzzccp.common.PasscodeInfo;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import lombok.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Request scoped memo of parsed passcodes, alias resolutions and loaded pins, so that a single join parses
+ * each passcode once and fetches each distinct pin once no matter how many helpers look at it.
+ *
+ * The context is bound to the opening thread and is not thread safe. Open it at the start of a request with
+ * try-with-resources; nested opens on the same thread share the outer context.
+ */
+public final class PinResolutionContext implements AutoCloseable {
+    private static final ThreadLocal<PinResolutionContext> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, PasscodeInfo> parsedPasscodes = new HashMap<>();
+    private final Map<String, PasscodeInfo> parsedPasscodesWithAttendeePin = new HashMap<>();
+    private final Map<String, String> resolvedCodes = new HashMap<>();
+    private final Map<String, Pin> pins = new HashMap<>();
+    private int depth;
+
+    private PinResolutionContext() {
+    }
+
+    public static PinResolutionContext open() {
+        PinResolutionContext context = CURRENT.get();
+        if (context == null) {
+            context = new PinResolutionContext();
+            CURRENT.set(context);
+        }
+        context.depth++;
+        return context;
+    }
+
+    public static Optional<PinResolutionContext> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    public PasscodeInfo parse(@NonNull String passcode, boolean loadAttendeePin,
+            @NonNull Supplier<PasscodeInfo> parser) {
+        PasscodeInfo info = parsedPasscodesWithAttendeePin.get(passcode);
+        if (info == null && !loadAttendeePin) {
+            info = parsedPasscodes.get(passcode);
+        }
+        if (info == null) {
+            info = parser.get();
+            (loadAttendeePin ? parsedPasscodesWithAttendeePin : parsedPasscodes).put(passcode, info);
+        }
+        return info;
+    }
+
+    public String resolveToPasscode(@NonNull String code, @NonNull Function<String, String> resolver) {
+        String passcode = resolvedCodes.get(code);
+        if (passcode == null) {
+            passcode = resolver.apply(code);
+            if (passcode != null) {
+                resolvedCodes.put(code, passcode);
+            }
+        }
+        return passcode;
+    }
+
+    /**
+     * @return the pin stored under the resolved passcode, loading it at most once per request. Misses are not
+     * memoized, callers are expected to fail the request on them.
+     */
+    public Pin findPin(@NonNull String passcode, @NonNull Function<String, Pin> loader) {
+        Pin pin = pins.get(passcode);
+        if (pin == null) {
+            pin = loader.apply(passcode);
+            if (pin != null) {
+                pins.put(passcode, pin);
+            }
+        }
+        return pin;
+    }
+
+    @Override
+    public void close() {
+        if (--depth == 0) {
+            CURRENT.remove();
+        }
+    }
+}
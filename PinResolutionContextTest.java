@@ -0,0 +1,116 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.amazonaws.ucbuzzccp.common.PasscodeInfo;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PinResolutionContextTest {
+    private static final String PASSCODE = "1234567890";
+    private static final Pin PIN = Pin.builder().code(PASSCODE).build();
+
+    @After
+    public void tearDown() {
+        while (PinResolutionContext.current().isPresent()) {
+            PinResolutionContext.current().get().close();
+        }
+    }
+
+    @Test
+    public void testNestedOpensShareTheOuterContext() {
+        try (PinResolutionContext outer = PinResolutionContext.open()) {
+            try (PinResolutionContext inner = PinResolutionContext.open()) {
+                assertSame(outer, inner);
+            }
+            assertSame(outer, PinResolutionContext.current().get());
+        }
+        assertFalse(PinResolutionContext.current().isPresent());
+    }
+
+    @Test
+    public void testContextIsBoundToTheOpeningThread() throws Exception {
+        try (PinResolutionContext context = PinResolutionContext.open()) {
+            boolean[] presentOnOtherThread = new boolean[1];
+            Thread other = new Thread(() -> presentOnOtherThread[0] = PinResolutionContext.current().isPresent());
+            other.start();
+            other.join();
+            assertFalse(presentOnOtherThread[0]);
+        }
+    }
+
+    @Test
+    public void testPinIsLoadedOncePerContext() {
+        AtomicInteger loads = new AtomicInteger();
+        try (PinResolutionContext context = PinResolutionContext.open()) {
+            for (int i = 0; i < 3; i++) {
+                assertSame(PIN, context.findPin(PASSCODE, passcode -> {
+                    loads.incrementAndGet();
+                    return PIN;
+                }));
+            }
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testMissesAreNotMemoized() {
+        AtomicInteger loads = new AtomicInteger();
+        try (PinResolutionContext context = PinResolutionContext.open()) {
+            assertNull(context.findPin(PASSCODE, passcode -> {
+                loads.incrementAndGet();
+                return null;
+            }));
+            assertSame(PIN, context.findPin(PASSCODE, passcode -> {
+                loads.incrementAndGet();
+                return PIN;
+            }));
+            assertNull(context.resolveToPasscode("alias", code -> null));
+            assertEquals(PASSCODE, context.resolveToPasscode("alias", code -> PASSCODE));
+        }
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testParseWithAttendeePinServesPlainParse() {
+        PasscodeInfo withAttendeePin = new PasscodeInfo(PASSCODE, PIN, null);
+        AtomicInteger parses = new AtomicInteger();
+        try (PinResolutionContext context = PinResolutionContext.open()) {
+            assertSame(withAttendeePin, context.parse(PASSCODE, true, () -> {
+                parses.incrementAndGet();
+                return withAttendeePin;
+            }));
+            assertSame(withAttendeePin, context.parse(PASSCODE, false, () -> {
+                parses.incrementAndGet();
+                return new PasscodeInfo(PASSCODE, null, null);
+            }));
+        }
+        assertEquals(1, parses.get());
+    }
+
+    @Test
+    public void testPlainParseDoesNotServeParseWithAttendeePin() {
+        AtomicInteger parses = new AtomicInteger();
+        try (PinResolutionContext context = PinResolutionContext.open()) {
+            context.parse(PASSCODE, false, () -> {
+                parses.incrementAndGet();
+                return new PasscodeInfo(PASSCODE, null, null);
+            });
+            PasscodeInfo withAttendeePin = context.parse(PASSCODE, true, () -> {
+                parses.incrementAndGet();
+                return new PasscodeInfo(PASSCODE, PIN, null);
+            });
+            assertTrue(withAttendeePin.hasPersonalizedPin());
+        }
+        assertEquals(2, parses.get());
+    }
+}
@@ -0,0 +1,116 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazon.metrics.declarative.MetricsManager;
+import com.amazonaws.services.ucbuzzprofileservice.model.Profile;
+import com.amazonaws.ucbuzzccp.common.identity.CCPIdentityClient;
+import com.amazonaws.ucbuzzccp.common.identity.ProfileNotFoundException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.NonNull;
+
+import javax.inject.Inject;
+import javax.measure.unit.Unit;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Profile cache in front of {@link CCPIdentityClient} keyed by profile id and by email.
+ *
+ * Concurrent lookups of the same key are coalesced, only the first caller goes to the identity service and the
+ * others wait for its result. Failed lookups are not cached.
+ */
+public class ProfileCache {
+    @VisibleForTesting
+    static final long DEFAULT_MAXIMUM_SIZE = 50_000;
+    @VisibleForTesting
+    static final long DEFAULT_TTL_SECONDS = 300;
+
+    private static final String PROFILE_ID_KEY_PREFIX = "id:";
+    private static final String EMAIL_KEY_PREFIX = "email:";
+    private static final String REGISTER_EMAIL_KEY_PREFIX = "register:";
+
+    private final CCPIdentityClient identityClient;
+    private final MetricsManager metricsManager;
+    private final Cache<String, Profile> profiles;
+
+    @Inject
+    public ProfileCache(CCPIdentityClient identityClient, MetricsManager metricsManager) {
+        this(identityClient, metricsManager, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_SECONDS);
+    }
+
+    @VisibleForTesting
+    ProfileCache(CCPIdentityClient identityClient, MetricsManager metricsManager, long maximumSize,
+            long ttlSeconds) {
+        this.identityClient = identityClient;
+        this.metricsManager = metricsManager;
+        this.profiles = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public Profile getProfile(@NonNull String profileId) throws ProfileNotFoundException {
+        return get(PROFILE_ID_KEY_PREFIX + profileId, () -> identityClient.getProfile(profileId));
+    }
+
+    public Profile getProfileByEmail(@NonNull String email) throws ProfileNotFoundException {
+        return get(EMAIL_KEY_PREFIX + normalize(email), () -> identityClient.getProfileByEmail(email));
+    }
+
+    /**
+     * Registrations are coalesced separately from plain email lookups so that a concurrent not-found result of
+     * {@link #getProfileByEmail} is never handed to a caller that asked for registration.
+     */
+    public Profile getOrRegisterProfileByEmail(@NonNull String email) throws ProfileNotFoundException {
+        return get(REGISTER_EMAIL_KEY_PREFIX + normalize(email),
+                () -> identityClient.getOrRegisterProfileByEmail(email, true));
+    }
+
+    @VisibleForTesting
+    CacheStats stats() {
+        return profiles.stats();
+    }
+
+    private Profile get(String key, ProfileLoader loader) throws ProfileNotFoundException {
+        boolean[] loaded = new boolean[1];
+        Profile profile;
+        try {
+            profile = profiles.get(key, () -> {
+                loaded[0] = true;
+                Profile p = loader.load();
+                if (p != null && p.getProfileId() != null && !key.startsWith(PROFILE_ID_KEY_PREFIX)) {
+                    profiles.put(PROFILE_ID_KEY_PREFIX + p.getProfileId(), p);
+                }
+                return p;
+            });
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ProfileNotFoundException) {
+                throw (ProfileNotFoundException) cause;
+            }
+            Throwables.throwIfUnchecked(cause);
+            throw new IllegalStateException("Unable to load profile", cause);
+        } finally {
+            metricsManager.get().addCount(loaded[0] ? "ProfileCache:Miss" : "ProfileCache:Hit", 1, Unit.ONE);
+        }
+        return profile;
+    }
+
+    private static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    @FunctionalInterface
+    private interface ProfileLoader {
+        Profile load() throws Exception;
+    }
+}
@@ -0,0 +1,115 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazon.coral.metrics.Metrics;
+import com.amazon.metrics.declarative.MetricsManager;
+import com.amazonaws.services.ucbuzzprofileservice.model.Profile;
+import com.amazonaws.ucbuzzccp.common.identity.CCPIdentityClient;
+import com.amazonaws.ucbuzzccp.common.identity.ProfileNotFoundException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ProfileCacheTest {
+    private static final String PROFILE_ID = "profile-id";
+    private static final String EMAIL = "joiner@example.com";
+    private static final Profile PROFILE = new Profile().withProfileId(PROFILE_ID);
+
+    @Mock
+    private CCPIdentityClient identityClient;
+    @Mock
+    private MetricsManager metricsManager;
+    @Mock
+    private Metrics metrics;
+
+    private ProfileCache profileCache;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(metricsManager.get()).thenReturn(metrics);
+        profileCache = new ProfileCache(identityClient, metricsManager, 100, 60);
+    }
+
+    @Test
+    public void testConcurrentLookupsOfOneProfileAreCoalesced() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(identityClient.getProfile(PROFILE_ID)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return PROFILE;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Profile> first = executor.submit(() -> profileCache.getProfile(PROFILE_ID));
+            loading.await(10, TimeUnit.SECONDS);
+            Future<Profile> second = executor.submit(() -> profileCache.getProfile(PROFILE_ID));
+            release.countDown();
+
+            assertSame(PROFILE, first.get(10, TimeUnit.SECONDS));
+            assertSame(PROFILE, second.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(identityClient, times(1)).getProfile(PROFILE_ID);
+    }
+
+    @Test
+    public void testEmailLookupAlsoServesProfileIdLookup() throws Exception {
+        when(identityClient.getProfileByEmail(EMAIL)).thenReturn(PROFILE);
+
+        assertSame(PROFILE, profileCache.getProfileByEmail(EMAIL));
+        assertSame(PROFILE, profileCache.getProfileByEmail(" Joiner@Example.com "));
+        assertSame(PROFILE, profileCache.getProfile(PROFILE_ID));
+
+        verify(identityClient, times(1)).getProfileByEmail(EMAIL);
+        verify(identityClient, times(0)).getProfile(PROFILE_ID);
+    }
+
+    @Test
+    public void testRegistrationIsNotServedFromEmailLookup() throws Exception {
+        when(identityClient.getProfileByEmail(EMAIL)).thenThrow(new ProfileNotFoundException("not found"));
+        when(identityClient.getOrRegisterProfileByEmail(EMAIL, true)).thenReturn(PROFILE);
+
+        try {
+            profileCache.getProfileByEmail(EMAIL);
+            fail("Expected ProfileNotFoundException");
+        } catch (ProfileNotFoundException e) {
+            // expected
+        }
+        assertSame(PROFILE, profileCache.getOrRegisterProfileByEmail(EMAIL));
+        verify(identityClient, times(1)).getOrRegisterProfileByEmail(EMAIL, true);
+    }
+
+    @Test
+    public void testFailedLookupsAreNotCached() throws Exception {
+        when(identityClient.getProfile(PROFILE_ID))
+                .thenThrow(new ProfileNotFoundException("not found"))
+                .thenReturn(PROFILE);
+
+        try {
+            profileCache.getProfile(PROFILE_ID);
+            fail("Expected ProfileNotFoundException");
+        } catch (ProfileNotFoundException e) {
+            // expected
+        }
+        assertSame(PROFILE, profileCache.getProfile(PROFILE_ID));
+        verify(identityClient, times(2)).getProfile(PROFILE_ID);
+    }
+}
@@ -0,0 +1,15 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+/**
+ * Source of uniformly distributed random numbers for generated codes.
+ */
+@FunctionalInterface
+public interface RandomCodeSource {
+
+    /**
+     * @return a uniformly distributed value in [0, bound)
+     */
+    int nextInt(int bound);
+}
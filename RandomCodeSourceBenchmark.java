@@ -0,0 +1,65 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the shared SHA1PRNG generator that {@link PasscodeParseHelper} used to hold against
+ * {@link StripedSecureRandomCodeSource}. {@link #main} runs both at 1 to 64 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomCodeSourceBenchmark {
+    private static final int CODE_SPACE_SIZE = 90_000;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    private SecureRandom sharedRandom;
+    private RandomCodeSource stripedSource;
+
+    @Setup
+    public void setup() throws Exception {
+        sharedRandom = SecureRandom.getInstance("SHA1PRNG", "SUN");
+        sharedRandom.nextBytes(new byte[128]);
+        stripedSource = new StripedSecureRandomCodeSource();
+    }
+
+    @Benchmark
+    public int sharedSecureRandom() {
+        return sharedRandom.nextInt(CODE_SPACE_SIZE);
+    }
+
+    @Benchmark
+    public int stripedSecureRandom() {
+        return stripedSource.nextInt(CODE_SPACE_SIZE);
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int threads : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .include(RandomCodeSourceBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
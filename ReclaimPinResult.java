@@ -0,0 +1,27 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.common.error.CCPError;
+import lombok.Value;
+
+/**
+ * Outcome of reclaiming one pin of a bulk reclaim, the error is null when the pin was reclaimed.
+ */
+@Value
+public class ReclaimPinResult {
+    String pin;
+    CCPError error;
+
+    public static ReclaimPinResult reclaimed(String pin) {
+        return new ReclaimPinResult(pin, null);
+    }
+
+    public static ReclaimPinResult failed(String pin, CCPError error) {
+        return new ReclaimPinResult(pin, error);
+    }
+
+    public boolean isReclaimed() {
+        return error == null;
+    }
+}
@@ -0,0 +1,43 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.amazon.coral.metrics.Metrics;
+import com.amazon.coral.metrics.MetricsFactory;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import java.util.function.Consumer;
+
+/**
+ * Publishes metrics recorded outside of a service request, e.g. by schedulers and background threads.
+ *
+ * {@link com.amazon.metrics.declarative.MetricsManager#get()} is bound to the request being served and must not be
+ * used from those threads. Every {@link #publish} opens its own metrics record from the service level
+ * {@link MetricsFactory}, tagged with the given operation, and closes it once the recorder returned.
+ */
+@Slf4j
+public class ServiceMetricsPublisher {
+    private final MetricsFactory metricsFactory;
+
+    @Inject
+    public ServiceMetricsPublisher(MetricsFactory metricsFactory) {
+        this.metricsFactory = metricsFactory;
+    }
+
+    public void publish(@NonNull String operation, @NonNull Consumer<Metrics> recorder) {
+        Metrics metrics = null;
+        try {
+            metrics = metricsFactory.newMetrics();
+            metrics.addProperty("Operation", operation);
+            recorder.accept(metrics);
+        } catch (RuntimeException e) {
+            log.warn("Unable to publish {} metrics", operation, e);
+        } finally {
+            if (metrics != null) {
+                metrics.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.amazon.coral.metrics.Metrics;
+import com.amazon.coral.metrics.MetricsFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.measure.unit.Unit;
+
+public class ServiceMetricsPublisherTest {
+    @Mock
+    private MetricsFactory metricsFactory;
+    @Mock
+    private Metrics metrics;
+
+    private ServiceMetricsPublisher serviceMetricsPublisher;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(metricsFactory.newMetrics()).thenReturn(metrics);
+        serviceMetricsPublisher = new ServiceMetricsPublisher(metricsFactory);
+    }
+
+    @Test
+    public void testRecordsIntoOwnMetricsAndClosesThem() {
+        serviceMetricsPublisher.publish("Operation", m -> m.addCount("Count", 1, Unit.ONE));
+
+        InOrder order = inOrder(metrics);
+        order.verify(metrics).addProperty("Operation", "Operation");
+        order.verify(metrics).addCount("Count", 1, Unit.ONE);
+        order.verify(metrics).close();
+    }
+
+    @Test
+    public void testFailingRecorderStillClosesMetrics() {
+        serviceMetricsPublisher.publish("Operation", m -> {
+            throw new IllegalStateException("recorder failure");
+        });
+
+        verify(metrics).close();
+    }
+}
@@ -0,0 +1,98 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.SecureRandom;
+
+/**
+ * {@link RandomCodeSource} backed by a fixed set of independently seeded SHA1PRNG instances.
+ *
+ * Threads are spread over the stripes by thread id so concurrent code generation doesn't serialize on a single
+ * generator, and each stripe draws random bytes in batches of {@link #PREFETCH_BYTES} to amortize the cost of
+ * the generator call. Values are reduced to the requested bound by rejection sampling so they stay unbiased.
+ */
+public class StripedSecureRandomCodeSource implements RandomCodeSource {
+    private static final String ALGORITHM = "SHA1PRNG";
+    private static final String PROVIDER = "SUN";
+    @VisibleForTesting
+    static final int PREFETCH_BYTES = 256;
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    public StripedSecureRandomCodeSource() throws NoSuchAlgorithmException, NoSuchProviderException {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    @VisibleForTesting
+    StripedSecureRandomCodeSource(int concurrency) throws NoSuchAlgorithmException, NoSuchProviderException {
+        int stripeCount = Integer.highestOneBit(Math.max(1, concurrency - 1)) << 1;
+        this.stripes = new Stripe[stripeCount];
+        this.mask = stripeCount - 1;
+        for (int i = 0; i < stripeCount; i++) {
+            SecureRandom random = SecureRandom.getInstance(ALGORITHM, PROVIDER);
+            random.nextBytes(new byte[128]);
+            stripes[i] = new Stripe(random);
+        }
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        return stripes[(int) Thread.currentThread().getId() & mask].nextInt(bound);
+    }
+
+    /**
+     * @return 64 uniformly distributed random bits
+     */
+    public long nextLong() {
+        return stripes[(int) Thread.currentThread().getId() & mask].nextLong();
+    }
+
+    private static final class Stripe {
+        private final SecureRandom random;
+        private final byte[] buffer = new byte[PREFETCH_BYTES];
+        private int position = PREFETCH_BYTES;
+
+        Stripe(SecureRandom random) {
+            this.random = random;
+        }
+
+        synchronized int nextInt(int bound) {
+            // largest multiple of bound that fits in 31 bits, values at or above it would bias the result
+            int limit = Integer.MAX_VALUE - (Integer.MAX_VALUE % bound);
+            int value;
+            do {
+                value = nextPositiveInt();
+            } while (value >= limit);
+            return value % bound;
+        }
+
+        synchronized long nextLong() {
+            return (long) nextRawInt() << 32 | nextRawInt() & 0xFFFF_FFFFL;
+        }
+
+        private int nextPositiveInt() {
+            return nextRawInt() & Integer.MAX_VALUE;
+        }
+
+        private int nextRawInt() {
+            if (position == PREFETCH_BYTES) {
+                random.nextBytes(buffer);
+                position = 0;
+            }
+            int value = ((buffer[position] & 0xff) << 24)
+                    | ((buffer[position + 1] & 0xff) << 16)
+                    | ((buffer[position + 2] & 0xff) << 8)
+                    | (buffer[position + 3] & 0xff);
+            position += 4;
+            return value;
+        }
+    }
+}
@@ -2,7 +2,6 @@
 
 package com.amazonaws.ucbuzzccp.helper;
 
-import com.amazonaws.ucbuzz.meetings.sdc.MeetingsDynamicConfigProvider;
 import com.amazonaws.ucbuzzccp.common.PasscodeInfo;
 import com.amazonaws.ucbuzzccp.dao.WaitingRoomAccessRequestDao;
 import com.amazonaws.ucbuzzccp.dao.model.Pin;
@@ -10,6 +9,7 @@ import com.amazonaws.ucbuzzccp.dao.model.PinType;
 import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
 import com.amazonaws.ucbuzzccp.handler.ExceptionHandler;
 import com.amazonaws.ucbuzzccp.handler.PinHandler;
+import com.amazonaws.ucbuzzccp.helper.JoinStageLatencies.Stage;
 import com.amazonaws.ucbuzzccp.v2.ForbiddenException;
 import com.amazonaws.ucbuzzccp.v2.NotFoundException;
 import com.google.common.annotations.VisibleForTesting;
@@ -19,17 +19,27 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.concurrent.CompletableFuture;
+
 @Slf4j
 public class V3MeetingExperienceHelper {
-    @Autowired MeetingsDynamicConfigProvider meetingsConfig;
+    @Autowired protected DynamicConfigSnapshot dynamicConfigSnapshot;
     @Autowired protected PinHandler pinHandler;
     @Autowired protected WaitingRoomAccessRequestDao waitingRoomAccessRequestDao;
     @Autowired protected PasscodeParseHelper passcodeParseHelper;
+    @Autowired protected JoinStageLatencies joinStageLatencies;
+    @Autowired protected AccessRequestStatusCache accessRequestStatusCache;
+    @Autowired protected JoinPathExecutor joinPathExecutor;
 
     public static final String V3MEETINGEXPERIENCE_SDC_CONFIG_KEY = "V3MeetingExperience";
 
     @VisibleForTesting public boolean isPinOwnerAllowlistedForV3Expereince(@NonNull String profileId) {
-        return meetingsConfig.isFeatureOnFor(V3MEETINGEXPERIENCE_SDC_CONFIG_KEY, profileId);
+        long start = System.nanoTime();
+        try {
+            return dynamicConfigSnapshot.isFeatureOnFor(V3MEETINGEXPERIENCE_SDC_CONFIG_KEY, profileId);
+        } finally {
+            joinStageLatencies.record(Stage.AllowlistEvaluation, start);
+        }
     }
 
     public void  isPinAllowlisted(Pin pin) {
@@ -47,17 +57,17 @@ public class V3MeetingExperienceHelper {
     }
 
     public Pin findPin(String code) {
-        passcodeParseHelper.parseAndVerifyPasscode(code, false);
+        parseAndVerifyPasscode(code, false);
         return findPin(code, false);
     }
 
     public Pin findConferencePin(String code) {
-        PasscodeInfo info = passcodeParseHelper.parseAndVerifyPasscode(code, false);
+        PasscodeInfo info = parseAndVerifyPasscode(code, false);
         return findPin(info.getConferencePin(), false);
     }
 
     public Pin findAttendeePin(String code) {
-        PasscodeInfo info = passcodeParseHelper.parseAndVerifyPasscode(code, true);
+        PasscodeInfo info = parseAndVerifyPasscode(code, true);
         if (info.hasPersonalizedPin()) {
             return info.getAttendeePin();
         } else {
@@ -66,6 +76,29 @@ public class V3MeetingExperienceHelper {
         }
     }
 
+    /**
+     * Asynchronous {@link #findConferencePin(String)}, completing exceptionally with the exceptions it throws.
+     */
+    public CompletableFuture<Pin> findConferencePinAsync(String code) {
+        return CompletableFuture.supplyAsync(() -> findConferencePin(code), joinPathExecutor);
+    }
+
+    /**
+     * Asynchronous {@link #findAttendeePin(String)}, completing exceptionally with the exceptions it throws.
+     */
+    public CompletableFuture<Pin> findAttendeePinAsync(String code) {
+        return CompletableFuture.supplyAsync(() -> findAttendeePin(code), joinPathExecutor);
+    }
+
+    private PasscodeInfo parseAndVerifyPasscode(String code, boolean loadAttendeePin) {
+        long start = System.nanoTime();
+        try {
+            return passcodeParseHelper.parseAndVerifyPasscode(code, loadAttendeePin);
+        } finally {
+            joinStageLatencies.record(Stage.PasscodeParse, start);
+        }
+    }
+
     public Pin findPin(String code, boolean throwV2) {
         Pin pin = pinHandler.findPin(code, throwV2);
         if (pin == null || pin.isExpired() || pin.getPinType() == PinType.Sdk) {
@@ -81,6 +114,7 @@ public class V3MeetingExperienceHelper {
     /**
      * Check whether waitingRoomAccessRequest exists by accessRequestId
      * If not or waitingRoomAccessRequest is not allowed, throw BadRequest Exception
+     * Allowed requests are served from the status cache without a DAO read
      * @param accessRequestId
      * @return WaitingRoomAccessRequest object if successful
      */
@@ -90,15 +124,22 @@ public class V3MeetingExperienceHelper {
                     String.format("null or empty accessRequestId:%s", accessRequestId));
         }
 
+        WaitingRoomAccessRequest cachedAccessRequest = accessRequestStatusCache.getIfAllowed(accessRequestId);
+        if (cachedAccessRequest != null) {
+            return cachedAccessRequest;
+        }
+
         WaitingRoomAccessRequest waitingRoomAccessRequest =
                 waitingRoomAccessRequestDao.load(accessRequestId);
-        log.info("Load waitingRoomAccessRequest: {}", waitingRoomAccessRequest);
+        log.info("Load waitingRoomAccessRequest: {} with status: {}", accessRequestId,
+                waitingRoomAccessRequest == null ? null : waitingRoomAccessRequest.getStatus());
 
         if (waitingRoomAccessRequest == null) {
             throw ExceptionHandler.newBadRequestException(
                     String.format("Invalid accessRequestId:%s", accessRequestId));
         }
 
+        accessRequestStatusCache.put(waitingRoomAccessRequest);
         if (!waitingRoomAccessRequest.isAllowed()) {
             throw new ForbiddenException(String.format("Not allowed status:%s",
                     waitingRoomAccessRequest.getStatus()));
@@ -106,4 +147,19 @@ public class V3MeetingExperienceHelper {
 
         return waitingRoomAccessRequest;
     }
+
+    /**
+     * Asynchronous {@link #validateWaitingRoomAccessRequest(String)}. Allowed requests in the status cache complete
+     * on the calling thread.
+     */
+    public CompletableFuture<WaitingRoomAccessRequest> validateWaitingRoomAccessRequestAsync(
+            String accessRequestId) {
+        WaitingRoomAccessRequest cachedAccessRequest = StringUtils.isEmpty(accessRequestId)
+                ? null : accessRequestStatusCache.getIfAllowed(accessRequestId);
+        if (cachedAccessRequest != null) {
+            return CompletableFuture.completedFuture(cachedAccessRequest);
+        }
+        return CompletableFuture.supplyAsync(() -> validateWaitingRoomAccessRequest(accessRequestId),
+                joinPathExecutor);
+    }
 }
@@ -0,0 +1,157 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.helper;
+
+import com.amazonaws.ucbuzzccp.AccessStatus;
+import com.amazonaws.ucbuzzccp.common.PasscodeInfo;
+import com.amazonaws.ucbuzzccp.dao.WaitingRoomAccessRequestDao;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.dao.model.PinType;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessLevel;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
+import com.amazonaws.ucbuzzccp.handler.PinHandler;
+import com.amazonaws.ucbuzzccp.v2.ForbiddenException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public class V3MeetingExperienceHelperTest {
+    private static final String PASSCODE = "1234567890";
+    private static final String CONFERENCE_PIN = "0987654321";
+    private static final String ACCESS_REQUEST_ID = "access-request-id";
+    private static final Pin PIN = Pin.builder().code(CONFERENCE_PIN).type(PinType.Conference.name()).build();
+
+    @Mock
+    private PinHandler pinHandler;
+    @Mock
+    private WaitingRoomAccessRequestDao waitingRoomAccessRequestDao;
+    @Mock
+    private PasscodeParseHelper passcodeParseHelper;
+    @Mock
+    private JoinStageLatencies joinStageLatencies;
+    @Mock
+    private JoinPathExecutor joinPathExecutor;
+
+    private AccessRequestStatusCache accessRequestStatusCache;
+    private V3MeetingExperienceHelper v3MeetingExperienceHelper;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[0]).run();
+            return null;
+        }).when(joinPathExecutor).execute(any(Runnable.class));
+        accessRequestStatusCache = new AccessRequestStatusCache();
+
+        v3MeetingExperienceHelper = new V3MeetingExperienceHelper();
+        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "pinHandler", pinHandler);
+        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "waitingRoomAccessRequestDao",
+                waitingRoomAccessRequestDao);
+        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "passcodeParseHelper", passcodeParseHelper);
+        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "joinStageLatencies", joinStageLatencies);
+        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "accessRequestStatusCache", accessRequestStatusCache);
+        ReflectionTestUtils.setField(v3MeetingExperienceHelper, "joinPathExecutor", joinPathExecutor);
+    }
+
+    @Test
+    public void testFindConferencePinAsync() throws Exception {
+        when(passcodeParseHelper.parseAndVerifyPasscode(PASSCODE, false))
+                .thenReturn(new PasscodeInfo(CONFERENCE_PIN, null, null));
+        when(pinHandler.findPin(CONFERENCE_PIN, false)).thenReturn(PIN);
+
+        assertSame(PIN, v3MeetingExperienceHelper.findConferencePinAsync(PASSCODE).get());
+        verify(joinPathExecutor).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void testFindConferencePinAsyncFailsForMissingPin() throws Exception {
+        when(passcodeParseHelper.parseAndVerifyPasscode(PASSCODE, false))
+                .thenReturn(new PasscodeInfo(CONFERENCE_PIN, null, null));
+        when(pinHandler.findPin(CONFERENCE_PIN, false)).thenReturn(null);
+
+        assertFailsWith(v3MeetingExperienceHelper.findConferencePinAsync(PASSCODE), RuntimeException.class);
+    }
+
+    @Test
+    public void testFindAttendeePinAsync() throws Exception {
+        PasscodeInfo info = mock(PasscodeInfo.class);
+        when(info.hasPersonalizedPin()).thenReturn(true);
+        when(info.getAttendeePin()).thenReturn(PIN);
+        when(passcodeParseHelper.parseAndVerifyPasscode(PASSCODE, true)).thenReturn(info);
+
+        assertSame(PIN, v3MeetingExperienceHelper.findAttendeePinAsync(PASSCODE).get());
+    }
+
+    @Test
+    public void testFindAttendeePinAsyncFailsWithoutPersonalizedPin() throws Exception {
+        PasscodeInfo info = mock(PasscodeInfo.class);
+        when(info.hasPersonalizedPin()).thenReturn(false);
+        when(passcodeParseHelper.parseAndVerifyPasscode(PASSCODE, true)).thenReturn(info);
+
+        assertFailsWith(v3MeetingExperienceHelper.findAttendeePinAsync(PASSCODE), RuntimeException.class);
+    }
+
+    @Test
+    public void testValidateAccessRequestAsyncServesCachedAllowedRequestInline() throws Exception {
+        WaitingRoomAccessRequest allowed = accessRequest(AccessStatus.APPROVED);
+        accessRequestStatusCache.put(allowed);
+
+        assertSame(allowed, v3MeetingExperienceHelper.validateWaitingRoomAccessRequestAsync(ACCESS_REQUEST_ID).get());
+        verify(joinPathExecutor, never()).execute(any(Runnable.class));
+        verify(waitingRoomAccessRequestDao, never()).load(anyString());
+    }
+
+    @Test
+    public void testValidateAccessRequestAsyncLoadsUncachedRequest() throws Exception {
+        WaitingRoomAccessRequest allowed = accessRequest(AccessStatus.APPROVED);
+        when(waitingRoomAccessRequestDao.load(ACCESS_REQUEST_ID)).thenReturn(allowed);
+
+        assertSame(allowed, v3MeetingExperienceHelper.validateWaitingRoomAccessRequestAsync(ACCESS_REQUEST_ID).get());
+        assertSame(allowed, accessRequestStatusCache.getIfAllowed(ACCESS_REQUEST_ID));
+    }
+
+    @Test
+    public void testValidateAccessRequestAsyncFailsForRequestNotAllowed() throws Exception {
+        WaitingRoomAccessRequest notAllowed = mock(WaitingRoomAccessRequest.class);
+        when(notAllowed.getAccessRequestId()).thenReturn(ACCESS_REQUEST_ID);
+        when(notAllowed.isAllowed()).thenReturn(false);
+        when(waitingRoomAccessRequestDao.load(ACCESS_REQUEST_ID)).thenReturn(notAllowed);
+
+        assertFailsWith(v3MeetingExperienceHelper.validateWaitingRoomAccessRequestAsync(ACCESS_REQUEST_ID),
+                ForbiddenException.class);
+    }
+
+    private static void assertFailsWith(CompletableFuture<?> future, Class<? extends Throwable> expected)
+            throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            assertTrue(expected.isInstance(e.getCause()));
+            return;
+        }
+        throw new AssertionError("Expected failure with " + expected.getSimpleName());
+    }
+
+    private static WaitingRoomAccessRequest accessRequest(String status) {
+        return WaitingRoomAccessRequest.builder()
+                .accessRequestId(ACCESS_REQUEST_ID)
+                .status(WaitingRoomAccessLevel.fromString(status))
+                .build();
+    }
+}
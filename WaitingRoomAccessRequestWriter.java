@@ -0,0 +1,187 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.WaitingRoomAccessRequestDao;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
+import com.amazonaws.ucbuzzccp.helper.AccessRequestStatusCache;
+import com.amazonaws.ucbuzzccp.helper.DynamicConfigSnapshot;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.measure.unit.Unit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind pipeline for auto approved anonymous access requests.
+ *
+ * Requests are queued and written in batches by a single flusher, either every flush interval or as soon as a full
+ * batch is queued. A single consumer draining a FIFO queue keeps the insert order of every waiting room. When the
+ * queue is full the caller waits up to the offer timeout, then inserts its own request synchronously and leaves the
+ * queue to the flusher, so requests are never dropped and a request thread never waits on other requests' writes.
+ * An overflowing request may land before requests queued ahead of it. Queued requests are only held in memory until
+ * flushed, they are flushed on shutdown.
+ *
+ * Visibility: a submitted request is already returned to the caller as approved and put in the
+ * {@link AccessRequestStatusCache} of this host, but it is not in the DAO until its batch is written. Reads on other
+ * hosts, and DAO reads on this host, don't see it for up to the flush interval, plus the retry backoff when the
+ * batch insert fails. The requests a batch insert leaves unprocessed are retried with exponential backoff, then
+ * inserted one at a time, requests the batch already wrote are never written again. A request that still can't be
+ * written is counted as AccessRequestWriter:Failed and evicted from the status
+ * cache, so the next status poll of the client goes to the DAO, doesn't find it and the client asks again.
+ */
+@Slf4j
+public class WaitingRoomAccessRequestWriter {
+    public static final String SDC_WRITE_BEHIND_ACCESS_REQUESTS = "WriteBehindAccessRequestInsert";
+
+    @VisibleForTesting
+    static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+    @VisibleForTesting
+    static final int DEFAULT_FLUSH_SIZE = 25;
+    @VisibleForTesting
+    static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 50;
+    private static final long OFFER_TIMEOUT_MILLIS = 20;
+    @VisibleForTesting
+    static final int MAXIMUM_BATCH_INSERT_ATTEMPTS = 3;
+    private static final long DEFAULT_RETRY_BACKOFF_MILLIS = 25;
+
+    private final WaitingRoomAccessRequestDao waitingRoomAccessRequestDao;
+    private final AccessRequestStatusCache accessRequestStatusCache;
+    private final DynamicConfigSnapshot dynamicConfigSnapshot;
+    private final ServiceMetricsPublisher serviceMetricsPublisher;
+    private final BlockingQueue<WaitingRoomAccessRequest> queue;
+    private final int flushSize;
+    private final long retryBackoffMillis;
+    private final ScheduledExecutorService flusher;
+
+    @Inject
+    public WaitingRoomAccessRequestWriter(WaitingRoomAccessRequestDao waitingRoomAccessRequestDao,
+            AccessRequestStatusCache accessRequestStatusCache, DynamicConfigSnapshot dynamicConfigSnapshot,
+            ServiceMetricsPublisher serviceMetricsPublisher) {
+        this(waitingRoomAccessRequestDao, accessRequestStatusCache, dynamicConfigSnapshot, serviceMetricsPublisher,
+                DEFAULT_QUEUE_CAPACITY, DEFAULT_FLUSH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS,
+                DEFAULT_RETRY_BACKOFF_MILLIS);
+    }
+
+    @VisibleForTesting
+    WaitingRoomAccessRequestWriter(WaitingRoomAccessRequestDao waitingRoomAccessRequestDao,
+            AccessRequestStatusCache accessRequestStatusCache, DynamicConfigSnapshot dynamicConfigSnapshot,
+            ServiceMetricsPublisher serviceMetricsPublisher, int queueCapacity, int flushSize,
+            long flushIntervalMillis, long retryBackoffMillis) {
+        this.waitingRoomAccessRequestDao = waitingRoomAccessRequestDao;
+        this.accessRequestStatusCache = accessRequestStatusCache;
+        this.dynamicConfigSnapshot = dynamicConfigSnapshot;
+        this.serviceMetricsPublisher = serviceMetricsPublisher;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushSize = flushSize;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("access-request-writer").setDaemon(true).build());
+        this.flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return dynamicConfigSnapshot.getBoolean(SDC_WRITE_BEHIND_ACCESS_REQUESTS, false);
+    }
+
+    /**
+     * Queue the access request for a batched insert, falling back to a synchronous insert of this request alone when
+     * the queue stays full for longer than the offer timeout. A failure of that insert is thrown to the caller, which
+     * hasn't answered the client yet.
+     */
+    public void submit(@NonNull WaitingRoomAccessRequest accessRequest) {
+        boolean queued;
+        try {
+            queued = queue.offer(accessRequest, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            serviceMetricsPublisher.publish("AccessRequestWriter",
+                    metrics -> metrics.addCount("AccessRequestWriter:QueueFull", 1, Unit.ONE));
+            flusher.execute(this::flush);
+            waitingRoomAccessRequestDao.insert(accessRequest);
+            return;
+        }
+        if (queue.size() >= flushSize) {
+            flusher.execute(this::flush);
+        }
+    }
+
+    @VisibleForTesting
+    synchronized void flush() {
+        List<WaitingRoomAccessRequest> batch = new ArrayList<>(flushSize);
+        while (queue.drainTo(batch, flushSize) > 0) {
+            write(batch);
+            batch = new ArrayList<>(flushSize);
+        }
+    }
+
+    private void write(List<WaitingRoomAccessRequest> batch) {
+        List<WaitingRoomAccessRequest> pending = batch;
+        long backoffMillis = retryBackoffMillis;
+        for (int attempt = 1; attempt <= MAXIMUM_BATCH_INSERT_ATTEMPTS; attempt++) {
+            try {
+                List<WaitingRoomAccessRequest> unprocessed = waitingRoomAccessRequestDao.batchInsert(pending);
+                int inserted = pending.size() - unprocessed.size();
+                serviceMetricsPublisher.publish("AccessRequestWriter",
+                        metrics -> metrics.addCount("AccessRequestWriter:Inserted", inserted, Unit.ONE));
+                if (unprocessed.isEmpty()) {
+                    return;
+                }
+                log.warn("Batch insert left {} of {} access requests unprocessed, attempt {} of {}",
+                        unprocessed.size(), pending.size(), attempt, MAXIMUM_BATCH_INSERT_ATTEMPTS);
+                pending = unprocessed;
+            } catch (RuntimeException e) {
+                log.warn("Batch insert of {} access requests failed, attempt {} of {}", pending.size(), attempt,
+                        MAXIMUM_BATCH_INSERT_ATTEMPTS, e);
+            }
+            serviceMetricsPublisher.publish("AccessRequestWriter",
+                    metrics -> metrics.addCount("AccessRequestWriter:BatchRetry", 1, Unit.ONE));
+            if (attempt < MAXIMUM_BATCH_INSERT_ATTEMPTS && !backOff(backoffMillis)) {
+                break;
+            }
+            backoffMillis *= 2;
+        }
+        for (WaitingRoomAccessRequest accessRequest : pending) {
+            try {
+                waitingRoomAccessRequestDao.insert(accessRequest);
+            } catch (RuntimeException insertFailure) {
+                log.error("Unable to insert access request {} for waitingRoomId: {}",
+                        accessRequest.getAccessRequestId(), accessRequest.getWaitingRoomId(), insertFailure);
+                serviceMetricsPublisher.publish("AccessRequestWriter",
+                        metrics -> metrics.addCount("AccessRequestWriter:Failed", 1, Unit.ONE));
+                accessRequestStatusCache.invalidate(accessRequest.getAccessRequestId());
+            }
+        }
+    }
+
+    private static boolean backOff(long backoffMillis) {
+        try {
+            Thread.sleep(backoffMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        flush();
+    }
+}
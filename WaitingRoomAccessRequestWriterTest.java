@@ -0,0 +1,146 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazon.coral.metrics.Metrics;
+import com.amazon.coral.metrics.MetricsFactory;
+import com.amazonaws.ucbuzzccp.AccessStatus;
+import com.amazonaws.ucbuzzccp.dao.WaitingRoomAccessRequestDao;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessLevel;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
+import com.amazonaws.ucbuzzccp.helper.AccessRequestStatusCache;
+import com.amazonaws.ucbuzzccp.helper.DynamicConfigSnapshot;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.measure.unit.Unit;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class WaitingRoomAccessRequestWriterTest {
+    private static final long NEVER_MILLIS = 3_600_000;
+
+    @Mock
+    private WaitingRoomAccessRequestDao waitingRoomAccessRequestDao;
+    @Mock
+    private DynamicConfigSnapshot dynamicConfigSnapshot;
+    @Mock
+    private MetricsFactory metricsFactory;
+    @Mock
+    private Metrics metrics;
+
+    private AccessRequestStatusCache accessRequestStatusCache;
+    private WaitingRoomAccessRequestWriter writer;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(metricsFactory.newMetrics()).thenReturn(metrics);
+        accessRequestStatusCache = new AccessRequestStatusCache();
+    }
+
+    @After
+    public void tearDown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedBeforeFallingBackToSingleInserts() {
+        writer = newWriter(10, 10);
+        WaitingRoomAccessRequest first = accessRequest("ar-1");
+        WaitingRoomAccessRequest second = accessRequest("ar-2");
+        doThrow(new IllegalStateException("throttled")).when(waitingRoomAccessRequestDao).batchInsert(anyList());
+
+        writer.submit(first);
+        writer.submit(second);
+        writer.flush();
+
+        verify(waitingRoomAccessRequestDao, times(WaitingRoomAccessRequestWriter.MAXIMUM_BATCH_INSERT_ATTEMPTS))
+                .batchInsert(Arrays.asList(first, second));
+        verify(waitingRoomAccessRequestDao).insert(first);
+        verify(waitingRoomAccessRequestDao).insert(second);
+    }
+
+    @Test
+    public void testOnlyUnprocessedRequestsOfBatchAreRetried() {
+        writer = newWriter(10, 10);
+        WaitingRoomAccessRequest first = accessRequest("ar-1");
+        WaitingRoomAccessRequest second = accessRequest("ar-2");
+        when(waitingRoomAccessRequestDao.batchInsert(Arrays.asList(first, second)))
+                .thenReturn(Collections.singletonList(second));
+
+        writer.submit(first);
+        writer.submit(second);
+        writer.flush();
+
+        verify(waitingRoomAccessRequestDao).batchInsert(Arrays.asList(first, second));
+        verify(waitingRoomAccessRequestDao).batchInsert(Collections.singletonList(second));
+        verify(waitingRoomAccessRequestDao, never()).insert(any(WaitingRoomAccessRequest.class));
+    }
+
+    @Test
+    public void testUnwritableRequestIsEvictedFromStatusCache() {
+        writer = newWriter(10, 10);
+        WaitingRoomAccessRequest written = accessRequest("ar-1");
+        WaitingRoomAccessRequest lost = accessRequest("ar-2");
+        doThrow(new IllegalStateException("throttled")).when(waitingRoomAccessRequestDao).batchInsert(anyList());
+        doThrow(new IllegalStateException("throttled")).when(waitingRoomAccessRequestDao).insert(lost);
+
+        writer.submit(written);
+        writer.submit(lost);
+        accessRequestStatusCache.put(written);
+        accessRequestStatusCache.put(lost);
+        writer.flush();
+
+        assertNotNull(accessRequestStatusCache.getIfAllowed("ar-1"));
+        assertNull(accessRequestStatusCache.getIfAllowed("ar-2"));
+        verify(metrics).addCount(eq("AccessRequestWriter:Failed"), eq(1.0), eq(Unit.ONE));
+    }
+
+    @Test
+    public void testQueueFullFallbackInsertsOnlyTheOverflowingRequest() {
+        writer = newWriter(1, 10);
+        WaitingRoomAccessRequest queued = accessRequest("ar-1");
+        WaitingRoomAccessRequest overflow = accessRequest("ar-2");
+
+        writer.submit(queued);
+        writer.submit(overflow);
+
+        verify(waitingRoomAccessRequestDao).insert(overflow);
+        verify(waitingRoomAccessRequestDao, never()).insert(queued);
+        // the queued request is left to the flusher
+        writer.flush();
+        verify(waitingRoomAccessRequestDao).batchInsert(Collections.singletonList(queued));
+    }
+
+    private WaitingRoomAccessRequestWriter newWriter(int queueCapacity, int flushSize) {
+        return new WaitingRoomAccessRequestWriter(waitingRoomAccessRequestDao, accessRequestStatusCache,
+                dynamicConfigSnapshot, new ServiceMetricsPublisher(metricsFactory), queueCapacity, flushSize,
+                NEVER_MILLIS, 1);
+    }
+
+    private static WaitingRoomAccessRequest accessRequest(String accessRequestId) {
+        return WaitingRoomAccessRequest.builder()
+                .accessRequestId(accessRequestId)
+                .waitingRoomId("wr-id")
+                .status(WaitingRoomAccessLevel.fromString(AccessStatus.APPROVED))
+                .build();
+    }
+}
@@ -0,0 +1,153 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.WaitingRoomDao;
+import com.amazonaws.ucbuzzccp.dao.model.Conference;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoom;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.NonNull;
+
+import javax.inject.Inject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per conference cache of the waiting room resolved by {@link WaitingRoomHandler#getOrCreateWaitingRoom}.
+ *
+ * At meeting start every joiner of a conference asks for the same waiting room, concurrent calls are coalesced so
+ * only one read or create is in flight per conference and the others wait for its result. A waiting room is cached
+ * for {@link #TTL_SECONDS} after it is read, which absorbs the join burst while bounding how long a change made on
+ * another host goes unseen. Changes made on this host must invalidate it here, by conference or by waiting room.
+ * {@link #loadWaitingRoom} fills the same cache from a plain read, for callers such as the warm-up that must never
+ * create a waiting room. {@link #loadWaitingRoomById} serves callers that only know the waiting room id, from the
+ * per conference entry when there is one and otherwise from a second cache by id with the same TTL.
+ */
+public class WaitingRoomCache {
+    @VisibleForTesting
+    static final long MAXIMUM_SIZE = 50_000;
+    @VisibleForTesting
+    static final long TTL_SECONDS = 10;
+
+    private final WaitingRoomHandler waitingRoomHandler;
+    private final WaitingRoomDao waitingRoomDao;
+    private final Cache<String, WaitingRoom> waitingRooms;
+    private final Cache<String, WaitingRoom> waitingRoomsById;
+    // waitingRoomId -> conferenceId of the cached entry, so a waiting room is invalidated without a scan
+    private final ConcurrentMap<String, String> conferenceIdsByWaitingRoomId = new ConcurrentHashMap<>();
+
+    @Inject
+    public WaitingRoomCache(WaitingRoomHandler waitingRoomHandler, WaitingRoomDao waitingRoomDao) {
+        this.waitingRoomHandler = waitingRoomHandler;
+        this.waitingRoomDao = waitingRoomDao;
+        this.waitingRooms = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_SIZE)
+                .expireAfterWrite(TTL_SECONDS, TimeUnit.SECONDS)
+                .removalListener(this::unlinkWaitingRoom)
+                .build();
+        this.waitingRoomsById = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_SIZE)
+                .expireAfterWrite(TTL_SECONDS, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public WaitingRoom getOrCreateWaitingRoom(Pin pin, @NonNull Conference conference) {
+        if (conference.getId() == null) {
+            return waitingRoomHandler.getOrCreateWaitingRoom(pin, conference);
+        }
+        try {
+            return waitingRooms.get(conference.getId(), () -> linkWaitingRoom(conference.getId(),
+                    waitingRoomHandler.getOrCreateWaitingRoom(pin, conference)));
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException("Unable to get or create waiting room", e.getCause());
+        }
+    }
+
+    /**
+     * @return the cached or persisted waiting room of the conference, null if it has none, never creating one
+     */
+    public WaitingRoom loadWaitingRoom(@NonNull Conference conference) {
+        if (conference.getId() == null) {
+            return null;
+        }
+        WaitingRoom cached = waitingRooms.getIfPresent(conference.getId());
+        if (cached != null) {
+            return cached;
+        }
+        WaitingRoom waitingRoom = waitingRoomDao.loadByConferenceId(conference.getId());
+        if (waitingRoom == null) {
+            return null;
+        }
+        WaitingRoom raced = waitingRooms.asMap().putIfAbsent(conference.getId(),
+                linkWaitingRoom(conference.getId(), waitingRoom));
+        return raced != null ? raced : waitingRoom;
+    }
+
+    /**
+     * @return the cached or persisted waiting room with the id, null if there is none
+     */
+    public WaitingRoom loadWaitingRoomById(@NonNull String waitingRoomId) {
+        String conferenceId = conferenceIdsByWaitingRoomId.get(waitingRoomId);
+        WaitingRoom cached = conferenceId == null ? null : waitingRooms.getIfPresent(conferenceId);
+        if (cached != null && waitingRoomId.equals(cached.getId())) {
+            return cached;
+        }
+        cached = waitingRoomsById.getIfPresent(waitingRoomId);
+        if (cached != null) {
+            return cached;
+        }
+        WaitingRoom waitingRoom = waitingRoomDao.load(waitingRoomId);
+        if (waitingRoom == null) {
+            return null;
+        }
+        WaitingRoom raced = waitingRoomsById.asMap().putIfAbsent(waitingRoomId, waitingRoom);
+        return raced != null ? raced : waitingRoom;
+    }
+
+    public void invalidate(String conferenceId) {
+        if (conferenceId != null) {
+            WaitingRoom cached = waitingRooms.getIfPresent(conferenceId);
+            if (cached != null && cached.getId() != null) {
+                waitingRoomsById.invalidate(cached.getId());
+            }
+            waitingRooms.invalidate(conferenceId);
+        }
+    }
+
+    public void invalidateWaitingRoom(String waitingRoomId) {
+        if (waitingRoomId != null) {
+            waitingRoomsById.invalidate(waitingRoomId);
+            invalidate(conferenceIdsByWaitingRoomId.remove(waitingRoomId));
+        }
+    }
+
+    private WaitingRoom linkWaitingRoom(String conferenceId, WaitingRoom waitingRoom) {
+        if (waitingRoom != null && waitingRoom.getId() != null) {
+            conferenceIdsByWaitingRoomId.put(waitingRoom.getId(), conferenceId);
+        }
+        return waitingRoom;
+    }
+
+    private void unlinkWaitingRoom(RemovalNotification<String, WaitingRoom> removal) {
+        String conferenceId = removal.getKey();
+        WaitingRoom waitingRoom = removal.getValue();
+        if (conferenceId == null || waitingRoom == null || waitingRoom.getId() == null) {
+            return;
+        }
+        // the entry may already have been reloaded, keep the link of the fresh entry
+        WaitingRoom current = waitingRooms.getIfPresent(conferenceId);
+        if (current == null || !waitingRoom.getId().equals(current.getId())) {
+            conferenceIdsByWaitingRoomId.remove(waitingRoom.getId(), conferenceId);
+        }
+    }
+}
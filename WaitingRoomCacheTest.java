@@ -0,0 +1,99 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.WaitingRoomDao;
+import com.amazonaws.ucbuzzccp.dao.model.Conference;
+import com.amazonaws.ucbuzzccp.dao.model.Pin;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoom;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WaitingRoomCacheTest {
+    private static final Pin PIN = Pin.builder().code("1234567890").build();
+    private static final Conference CONFERENCE = Conference.builder().id("conference-id").build();
+    private static final WaitingRoom WAITING_ROOM = WaitingRoom.builder().id("wr-id").build();
+
+    @Mock
+    private WaitingRoomHandler waitingRoomHandler;
+    @Mock
+    private WaitingRoomDao waitingRoomDao;
+
+    private WaitingRoomCache waitingRoomCache;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(waitingRoomHandler.getOrCreateWaitingRoom(PIN, CONFERENCE)).thenReturn(WAITING_ROOM);
+        waitingRoomCache = new WaitingRoomCache(waitingRoomHandler, waitingRoomDao);
+    }
+
+    @Test
+    public void testWaitingRoomIsCachedPerConference() {
+        assertSame(WAITING_ROOM, waitingRoomCache.getOrCreateWaitingRoom(PIN, CONFERENCE));
+        assertSame(WAITING_ROOM, waitingRoomCache.getOrCreateWaitingRoom(PIN, CONFERENCE));
+        verify(waitingRoomHandler, times(1)).getOrCreateWaitingRoom(PIN, CONFERENCE);
+    }
+
+    @Test
+    public void testInvalidateByWaitingRoomIdReloads() {
+        waitingRoomCache.getOrCreateWaitingRoom(PIN, CONFERENCE);
+        waitingRoomCache.invalidateWaitingRoom(WAITING_ROOM.getId());
+        waitingRoomCache.getOrCreateWaitingRoom(PIN, CONFERENCE);
+        // the link is kept for the reloaded entry
+        waitingRoomCache.invalidateWaitingRoom(WAITING_ROOM.getId());
+        waitingRoomCache.getOrCreateWaitingRoom(PIN, CONFERENCE);
+        verify(waitingRoomHandler, times(3)).getOrCreateWaitingRoom(PIN, CONFERENCE);
+    }
+
+    @Test
+    public void testInvalidateByConferenceIdReloads() {
+        waitingRoomCache.getOrCreateWaitingRoom(PIN, CONFERENCE);
+        waitingRoomCache.invalidate(CONFERENCE.getId());
+        waitingRoomCache.getOrCreateWaitingRoom(PIN, CONFERENCE);
+        verify(waitingRoomHandler, times(2)).getOrCreateWaitingRoom(PIN, CONFERENCE);
+    }
+
+    @Test
+    public void testLoadWaitingRoomNeverCreates() {
+        when(waitingRoomDao.loadByConferenceId(CONFERENCE.getId())).thenReturn(WAITING_ROOM);
+
+        assertSame(WAITING_ROOM, waitingRoomCache.loadWaitingRoom(CONFERENCE));
+        assertSame(WAITING_ROOM, waitingRoomCache.getOrCreateWaitingRoom(PIN, CONFERENCE));
+        verify(waitingRoomHandler, never()).getOrCreateWaitingRoom(PIN, CONFERENCE);
+    }
+
+    @Test
+    public void testLoadByIdIsServedFromConferenceEntry() {
+        waitingRoomCache.getOrCreateWaitingRoom(PIN, CONFERENCE);
+
+        assertSame(WAITING_ROOM, waitingRoomCache.loadWaitingRoomById(WAITING_ROOM.getId()));
+        verify(waitingRoomDao, never()).load(WAITING_ROOM.getId());
+    }
+
+    @Test
+    public void testLoadByIdIsCachedUntilInvalidated() {
+        when(waitingRoomDao.load(WAITING_ROOM.getId())).thenReturn(WAITING_ROOM);
+
+        assertSame(WAITING_ROOM, waitingRoomCache.loadWaitingRoomById(WAITING_ROOM.getId()));
+        assertSame(WAITING_ROOM, waitingRoomCache.loadWaitingRoomById(WAITING_ROOM.getId()));
+        waitingRoomCache.invalidateWaitingRoom(WAITING_ROOM.getId());
+        assertSame(WAITING_ROOM, waitingRoomCache.loadWaitingRoomById(WAITING_ROOM.getId()));
+        verify(waitingRoomDao, times(2)).load(WAITING_ROOM.getId());
+    }
+
+    @Test
+    public void testLoadWaitingRoomOfConferenceWithoutOne() {
+        assertNull(waitingRoomCache.loadWaitingRoom(CONFERENCE));
+        verify(waitingRoomHandler, never()).getOrCreateWaitingRoom(PIN, CONFERENCE);
+    }
+}
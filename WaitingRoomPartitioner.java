@@ -0,0 +1,287 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazonaws.ucbuzzccp.dao.WaitingRoomAccessRequestDao;
+import com.amazonaws.ucbuzzccp.dao.WaitingRoomDao;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoom;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.measure.unit.Unit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads the access requests of hot waiting rooms over several partitions.
+ *
+ * Every waiting room starts with all its access requests on its own partition. The writes of a waiting room are
+ * counted per second, once a second saw more than the split threshold the fan out of the room doubles, up to
+ * {@link #MAXIMUM_FAN_OUT}, and new requests are spread over the partitions following the base partition of the
+ * room by a hash of their id. A split only goes ahead when no other waiting room writes to the partitions it adds,
+ * and is persisted on the waiting room before the first request is written there. A room never merges back. Point
+ * reads by access request id don't depend on the partition and are unaffected.
+ *
+ * Reads take the waiting room from {@link WaitingRoomCache} and query the partitions of the larger of its fan out and
+ * the fan out this host persisted. A split persisted by another host is therefore read at most the cache TTL late,
+ * the same bound every other waiting room change has.
+ *
+ * The check that the added partitions are free and the raise of the fan out are two steps, so rooms next to each
+ * other that split at the same time on different hosts can both take a partition. That only costs throughput: every
+ * partition query also filters by waiting room id, so a room never reads the requests of another.
+ */
+@Slf4j
+public class WaitingRoomPartitioner {
+    @VisibleForTesting
+    static final int MAXIMUM_FAN_OUT = 8;
+    @VisibleForTesting
+    static final long SPLIT_WRITES_PER_SECOND = 500;
+    @VisibleForTesting
+    static final long SPLIT_RETRY_SECONDS = 60;
+    private static final long MAXIMUM_TRACKED_ROOMS = 50_000;
+    private static final long IDLE_EXPIRY_HOURS = 12;
+    private static final long GATHER_TIMEOUT_SECONDS = 5;
+    private static final int PARTITION_READ_PARALLELISM = 16;
+    // kept short so a read waits behind a few others at most, beyond that it runs on the caller
+    private static final int PARTITION_READ_QUEUE_CAPACITY = 2 * PARTITION_READ_PARALLELISM;
+
+    private final WaitingRoomAccessRequestDao waitingRoomAccessRequestDao;
+    private final WaitingRoomDao waitingRoomDao;
+    private final WaitingRoomCache waitingRoomCache;
+    private final ServiceMetricsPublisher serviceMetricsPublisher;
+    private final LongSupplier clockMillis;
+    private final ExecutorService partitionReadExecutor;
+    private final Cache<String, WriteRate> writeRates;
+
+    @Inject
+    public WaitingRoomPartitioner(WaitingRoomAccessRequestDao waitingRoomAccessRequestDao,
+            WaitingRoomDao waitingRoomDao, WaitingRoomCache waitingRoomCache,
+            ServiceMetricsPublisher serviceMetricsPublisher) {
+        this(waitingRoomAccessRequestDao, waitingRoomDao, waitingRoomCache, serviceMetricsPublisher,
+                System::currentTimeMillis,
+                new ThreadPoolExecutor(PARTITION_READ_PARALLELISM, PARTITION_READ_PARALLELISM, 0,
+                        TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(PARTITION_READ_QUEUE_CAPACITY),
+                        new ThreadFactoryBuilder().setNameFormat("waiting-room-partition-read-%d").setDaemon(true)
+                                .build(),
+                        new ThreadPoolExecutor.CallerRunsPolicy()));
+    }
+
+    @VisibleForTesting
+    WaitingRoomPartitioner(WaitingRoomAccessRequestDao waitingRoomAccessRequestDao, WaitingRoomDao waitingRoomDao,
+            WaitingRoomCache waitingRoomCache, ServiceMetricsPublisher serviceMetricsPublisher,
+            LongSupplier clockMillis, ExecutorService partitionReadExecutor) {
+        this.waitingRoomAccessRequestDao = waitingRoomAccessRequestDao;
+        this.waitingRoomDao = waitingRoomDao;
+        this.waitingRoomCache = waitingRoomCache;
+        this.serviceMetricsPublisher = serviceMetricsPublisher;
+        this.clockMillis = clockMillis;
+        this.partitionReadExecutor = partitionReadExecutor;
+        this.writeRates = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_TRACKED_ROOMS)
+                .expireAfterAccess(IDLE_EXPIRY_HOURS, TimeUnit.HOURS)
+                .build();
+    }
+
+    /**
+     * Count a write to the waiting room and pick the partition of the new access request.
+     */
+    public int partitionFor(@NonNull WaitingRoom waitingRoom, @NonNull String accessRequestId) {
+        WriteRate writeRate;
+        try {
+            writeRate = writeRates.get(waitingRoom.getId(), WriteRate::new);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        long second = TimeUnit.MILLISECONDS.toSeconds(clockMillis.getAsLong());
+        // the waiting room may be cached from before a split persisted by this host
+        int fanOut = writeRate.fanOut.accumulateAndGet(fanOutOf(waitingRoom), Math::max);
+        if (writeRate.record(second, fanOut) && fanOut < MAXIMUM_FAN_OUT) {
+            fanOut = split(waitingRoom, writeRate, fanOut, second);
+        }
+        return waitingRoom.getPartitionNum() + Math.floorMod(accessRequestId.hashCode(), fanOut);
+    }
+
+    @VisibleForTesting
+    int fanOut(String waitingRoomId) {
+        WriteRate writeRate = writeRates.getIfPresent(waitingRoomId);
+        return writeRate == null ? 1 : writeRate.fanOut.get();
+    }
+
+    /**
+     * @return the access requests of the waiting room gathered from every partition it was split over
+     */
+    public List<WaitingRoomAccessRequest> loadWRAccessRequests(@NonNull String waitingRoomId) {
+        WaitingRoom waitingRoom = waitingRoomCache.loadWaitingRoomById(waitingRoomId);
+        int fanOut = readFanOut(waitingRoomId, waitingRoom);
+        if (fanOut == 1) {
+            return waitingRoomAccessRequestDao.loadWRAccessRequestsByWrId(waitingRoomId);
+        }
+        return gather(waitingRoom, fanOut, partition -> waitingRoomAccessRequestDao.loadWRAccessRequestsByWrIdAndPartition(
+                waitingRoomId, partition)).stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the access request with the dial-in code from any partition of the waiting room, null if none has it
+     */
+    public WaitingRoomAccessRequest loadWRAccessRequestByDialInCode(@NonNull String waitingRoomId,
+            @NonNull String dialInCode) {
+        WaitingRoom waitingRoom = waitingRoomCache.loadWaitingRoomById(waitingRoomId);
+        int fanOut = readFanOut(waitingRoomId, waitingRoom);
+        if (fanOut == 1) {
+            return waitingRoomAccessRequestDao.loadWRAccessRequestByDialInCodeAndWrId(dialInCode, waitingRoomId);
+        }
+        return gather(waitingRoom, fanOut, partition -> waitingRoomAccessRequestDao
+                .loadWRAccessRequestByDialInCodeAndWrIdAndPartition(dialInCode, waitingRoomId, partition))
+                .stream()
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        partitionReadExecutor.shutdown();
+    }
+
+    private static int fanOutOf(WaitingRoom waitingRoom) {
+        return waitingRoom == null || waitingRoom.getPartitionFanOut() == null
+                ? 1 : Math.max(1, waitingRoom.getPartitionFanOut());
+    }
+
+    /**
+     * @return the fan out to read with, the cached waiting room may be from before a split persisted by this host
+     */
+    private int readFanOut(String waitingRoomId, WaitingRoom waitingRoom) {
+        if (waitingRoom == null) {
+            return 1;
+        }
+        return Math.min(Math.max(fanOutOf(waitingRoom), fanOut(waitingRoomId)), MAXIMUM_FAN_OUT);
+    }
+
+    /**
+     * @return the fan out to write with, the doubled one once it is persisted
+     */
+    private int split(WaitingRoom waitingRoom, WriteRate writeRate, int fanOut, long second) {
+        if (!writeRate.splitting.compareAndSet(false, true)) {
+            return fanOut;
+        }
+        try {
+            int splitFanOut = fanOut * 2;
+            if (!partitionsFree(waitingRoom, fanOut, splitFanOut)) {
+                log.info("Not splitting waitingRoomId: {}, partitions after {} are used by other waiting rooms",
+                        waitingRoom.getId(), waitingRoom.getPartitionNum() + fanOut - 1);
+                serviceMetricsPublisher.publish("WaitingRoomPartitioner",
+                        metrics -> metrics.addCount("WaitingRoomPartitioner:SplitBlocked", 1, Unit.ONE));
+                writeRate.nextSplitSecond.set(second + SPLIT_RETRY_SECONDS);
+                return fanOut;
+            }
+            // persisted before any write goes to the new partitions, another host may have raised it further. Not
+            // conditional on the partitions still being free, a room splitting into them meanwhile only shares them
+            int persisted = Math.min(waitingRoomDao.raisePartitionFanOut(waitingRoom.getId(), splitFanOut),
+                    MAXIMUM_FAN_OUT);
+            int raised = writeRate.fanOut.accumulateAndGet(persisted, Math::max);
+            waitingRoomCache.invalidateWaitingRoom(waitingRoom.getId());
+            log.info("Split waitingRoomId: {} over {} partitions", waitingRoom.getId(), raised);
+            serviceMetricsPublisher.publish("WaitingRoomPartitioner",
+                    metrics -> metrics.addCount("WaitingRoomPartitioner:Split", 1, Unit.ONE));
+            return raised;
+        } catch (RuntimeException e) {
+            log.warn("Unable to split waitingRoomId: {}, keeping {} partitions", waitingRoom.getId(), fanOut, e);
+            serviceMetricsPublisher.publish("WaitingRoomPartitioner",
+                    metrics -> metrics.addCount("WaitingRoomPartitioner:SplitFailure", 1, Unit.ONE));
+            writeRate.nextSplitSecond.set(second + SPLIT_RETRY_SECONDS);
+            return fanOut;
+        } finally {
+            writeRate.splitting.set(false);
+        }
+    }
+
+    /**
+     * @return whether no other waiting room writes to the partitions the split adds to the waiting room
+     */
+    private boolean partitionsFree(WaitingRoom waitingRoom, int fanOut, int splitFanOut) {
+        int base = waitingRoom.getPartitionNum();
+        // rooms based up to MAXIMUM_FAN_OUT - 1 partitions before ours may have split into the added partitions
+        for (WaitingRoom other : waitingRoomDao.loadByPartitionNumBetween(base - MAXIMUM_FAN_OUT + 1,
+                base + splitFanOut - 1)) {
+            if (!waitingRoom.getId().equals(other.getId()) && other.getPartitionNum() < base + splitFanOut
+                    && other.getPartitionNum() + fanOutOf(other) > base + fanOut) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads every partition of the persisted fan out, the first on the calling thread and the others on the
+     * partition read executor, which is separate from the join path executor the caller may be running on.
+     */
+    private <T> List<T> gather(WaitingRoom waitingRoom, int fanOut, IntFunction<T> partitionRead) {
+        List<CompletableFuture<T>> reads = new ArrayList<>(fanOut);
+        for (int i = 1; i < fanOut; i++) {
+            int partition = waitingRoom.getPartitionNum() + i;
+            reads.add(CompletableFuture.supplyAsync(() -> partitionRead.apply(partition), partitionReadExecutor));
+        }
+        List<T> results = new ArrayList<>(fanOut);
+        results.add(partitionRead.apply(waitingRoom.getPartitionNum()));
+        try {
+            CompletableFuture.allOf(reads.toArray(new CompletableFuture[0]))
+                    .get(GATHER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            reads.forEach(read -> results.add(read.join()));
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Waiting room partition read failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out reading partitions of waitingRoomId: " + waitingRoom.getId(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading waiting room partitions", e);
+        }
+    }
+
+    private static final class WriteRate {
+        // highest fan out known to be persisted for the waiting room
+        private final AtomicInteger fanOut = new AtomicInteger(1);
+        // second << 32 | writes within that second
+        private final AtomicLong currentSecond = new AtomicLong();
+        private final AtomicLong nextSplitSecond = new AtomicLong();
+        private final AtomicBoolean splitting = new AtomicBoolean();
+
+        /**
+         * @return whether this write took the current second past the split threshold of the fan out
+         */
+        boolean record(long second, int fanOut) {
+            long current = currentSecond.updateAndGet(previous ->
+                    second << 32 | ((previous >>> 32) == second ? (previous & 0xFFFF_FFFFL) + 1 : 1));
+            // each partition takes at most the split rate, split once the current fan out is exceeded
+            return (current & 0xFFFF_FFFFL) > SPLIT_WRITES_PER_SECOND * fanOut && second >= nextSplitSecond.get();
+        }
+    }
+}
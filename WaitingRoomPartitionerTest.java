@@ -0,0 +1,205 @@
+/* Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved. */
+
+package com.amazonaws.ucbuzzccp.handler;
+
+import com.amazon.coral.metrics.Metrics;
+import com.amazon.coral.metrics.MetricsFactory;
+import com.amazonaws.ucbuzzccp.dao.WaitingRoomAccessRequestDao;
+import com.amazonaws.ucbuzzccp.dao.WaitingRoomDao;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoom;
+import com.amazonaws.ucbuzzccp.dao.model.WaitingRoomAccessRequest;
+import com.amazonaws.ucbuzzccp.helper.ServiceMetricsPublisher;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class WaitingRoomPartitionerTest {
+    private static final String WR_ID = "wr-id";
+    private static final String DIAL_IN_CODE = "123456789010000";
+    private static final int BASE_PARTITION = 16;
+
+    @Mock
+    private WaitingRoomAccessRequestDao waitingRoomAccessRequestDao;
+    @Mock
+    private WaitingRoomDao waitingRoomDao;
+    @Mock
+    private WaitingRoomCache waitingRoomCache;
+    @Mock
+    private MetricsFactory metricsFactory;
+    @Mock
+    private Metrics metrics;
+    @Mock
+    private ExecutorService partitionReadExecutor;
+    @Mock
+    private WaitingRoom waitingRoom;
+
+    private final AtomicLong clockMillis = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+    private WaitingRoomPartitioner waitingRoomPartitioner;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(metricsFactory.newMetrics()).thenReturn(metrics);
+        when(waitingRoom.getId()).thenReturn(WR_ID);
+        when(waitingRoom.getPartitionNum()).thenReturn(BASE_PARTITION);
+        when(waitingRoomCache.loadWaitingRoomById(WR_ID)).thenReturn(waitingRoom);
+        when(waitingRoomDao.raisePartitionFanOut(eq(WR_ID), anyInt()))
+                .thenAnswer(invocation -> invocation.getArguments()[1]);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[0]).run();
+            return null;
+        }).when(partitionReadExecutor).execute(any(Runnable.class));
+        waitingRoomPartitioner = new WaitingRoomPartitioner(waitingRoomAccessRequestDao, waitingRoomDao,
+                waitingRoomCache, new ServiceMetricsPublisher(metricsFactory), clockMillis::get, partitionReadExecutor);
+    }
+
+    @Test
+    public void testQuietRoomStaysOnBasePartition() {
+        for (int i = 0; i < WaitingRoomPartitioner.SPLIT_WRITES_PER_SECOND; i++) {
+            assertEquals(BASE_PARTITION, waitingRoomPartitioner.partitionFor(waitingRoom, "request-" + i));
+            if (i % 100 == 0) {
+                clockMillis.addAndGet(TimeUnit.SECONDS.toMillis(1));
+            }
+        }
+        assertEquals(1, waitingRoomPartitioner.fanOut(WR_ID));
+        verify(waitingRoomDao, never()).raisePartitionFanOut(anyString(), anyInt());
+    }
+
+    @Test
+    public void testHotRoomSplitsUpToMaximumFanOut() {
+        Set<Integer> partitions = new HashSet<>();
+        for (int i = 0; i < 20 * WaitingRoomPartitioner.SPLIT_WRITES_PER_SECOND; i++) {
+            partitions.add(waitingRoomPartitioner.partitionFor(waitingRoom, "request-" + i));
+        }
+
+        assertEquals(WaitingRoomPartitioner.MAXIMUM_FAN_OUT, waitingRoomPartitioner.fanOut(WR_ID));
+        assertEquals(WaitingRoomPartitioner.MAXIMUM_FAN_OUT, partitions.size());
+        for (int partition : partitions) {
+            assertTrue(partition >= BASE_PARTITION
+                    && partition < BASE_PARTITION + WaitingRoomPartitioner.MAXIMUM_FAN_OUT);
+        }
+        verify(waitingRoomDao).raisePartitionFanOut(WR_ID, 2);
+        verify(waitingRoomDao).raisePartitionFanOut(WR_ID, 4);
+        verify(waitingRoomDao).raisePartitionFanOut(WR_ID, 8);
+        verify(waitingRoomCache, times(3)).invalidateWaitingRoom(WR_ID);
+    }
+
+    @Test
+    public void testDoesNotSplitIntoPartitionsOfAnotherRoom() {
+        WaitingRoom neighbour = mock(WaitingRoom.class);
+        when(neighbour.getId()).thenReturn("neighbour-id");
+        when(neighbour.getPartitionNum()).thenReturn(BASE_PARTITION + 1);
+        when(waitingRoomDao.loadByPartitionNumBetween(anyInt(), anyInt()))
+                .thenReturn(Collections.singletonList(neighbour));
+
+        for (int i = 0; i < 4 * WaitingRoomPartitioner.SPLIT_WRITES_PER_SECOND; i++) {
+            assertEquals(BASE_PARTITION, waitingRoomPartitioner.partitionFor(waitingRoom, "request-" + i));
+        }
+
+        assertEquals(1, waitingRoomPartitioner.fanOut(WR_ID));
+        // checked once, then not again before the retry interval passed
+        verify(waitingRoomDao, times(1)).loadByPartitionNumBetween(anyInt(), anyInt());
+        verify(waitingRoomDao, never()).raisePartitionFanOut(anyString(), anyInt());
+    }
+
+    @Test
+    public void testKeepsFanOutWhenSplitCannotBePersisted() {
+        when(waitingRoomDao.raisePartitionFanOut(eq(WR_ID), anyInt()))
+                .thenThrow(new IllegalStateException("Injected update failure"));
+
+        for (int i = 0; i < 4 * WaitingRoomPartitioner.SPLIT_WRITES_PER_SECOND; i++) {
+            assertEquals(BASE_PARTITION, waitingRoomPartitioner.partitionFor(waitingRoom, "request-" + i));
+        }
+
+        assertEquals(1, waitingRoomPartitioner.fanOut(WR_ID));
+        verify(waitingRoomCache, never()).invalidateWaitingRoom(anyString());
+    }
+
+    @Test
+    public void testWritesWithFanOutPersistedByAnotherHost() {
+        when(waitingRoom.getPartitionFanOut()).thenReturn(4);
+
+        Set<Integer> partitions = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            partitions.add(waitingRoomPartitioner.partitionFor(waitingRoom, "request-" + i));
+        }
+
+        assertEquals(4, partitions.size());
+        verify(waitingRoomDao, never()).raisePartitionFanOut(anyString(), anyInt());
+    }
+
+    @Test
+    public void testReadsOfUnsplitRoomUseSingleQuery() {
+        WaitingRoomAccessRequest request = new WaitingRoomAccessRequest();
+        when(waitingRoomAccessRequestDao.loadWRAccessRequestsByWrId(WR_ID))
+                .thenReturn(Collections.singletonList(request));
+
+        assertEquals(Collections.singletonList(request), waitingRoomPartitioner.loadWRAccessRequests(WR_ID));
+        verify(waitingRoomAccessRequestDao, never()).loadWRAccessRequestsByWrIdAndPartition(anyString(), anyInt());
+    }
+
+    @Test
+    public void testReadsGatherOnlyPersistedPartitions() {
+        when(waitingRoom.getPartitionFanOut()).thenReturn(2);
+        WaitingRoomAccessRequest request = new WaitingRoomAccessRequest();
+        when(waitingRoomAccessRequestDao.loadWRAccessRequestsByWrIdAndPartition(eq(WR_ID), anyInt()))
+                .thenReturn(Collections.singletonList(request));
+
+        List<WaitingRoomAccessRequest> requests = waitingRoomPartitioner.loadWRAccessRequests(WR_ID);
+
+        assertEquals(2, requests.size());
+        verify(waitingRoomAccessRequestDao).loadWRAccessRequestsByWrIdAndPartition(WR_ID, BASE_PARTITION);
+        verify(waitingRoomAccessRequestDao).loadWRAccessRequestsByWrIdAndPartition(WR_ID, BASE_PARTITION + 1);
+        verify(waitingRoomAccessRequestDao, times(2)).loadWRAccessRequestsByWrIdAndPartition(eq(WR_ID), anyInt());
+        verify(partitionReadExecutor, times(1)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void testReadsIncludePartitionsOfSplitNotYetCached() {
+        for (int i = 0; i < 2 * WaitingRoomPartitioner.SPLIT_WRITES_PER_SECOND; i++) {
+            waitingRoomPartitioner.partitionFor(waitingRoom, "request-" + i);
+        }
+        assertEquals(2, waitingRoomPartitioner.fanOut(WR_ID));
+
+        waitingRoomPartitioner.loadWRAccessRequests(WR_ID);
+
+        verify(waitingRoomAccessRequestDao).loadWRAccessRequestsByWrIdAndPartition(WR_ID, BASE_PARTITION);
+        verify(waitingRoomAccessRequestDao).loadWRAccessRequestsByWrIdAndPartition(WR_ID, BASE_PARTITION + 1);
+        verify(waitingRoomDao, never()).load(anyString());
+    }
+
+    @Test
+    public void testDialInCodeReadFindsRequestOnAnyPartition() {
+        when(waitingRoom.getPartitionFanOut()).thenReturn(4);
+        WaitingRoomAccessRequest request = new WaitingRoomAccessRequest();
+        when(waitingRoomAccessRequestDao.loadWRAccessRequestByDialInCodeAndWrIdAndPartition(DIAL_IN_CODE, WR_ID,
+                BASE_PARTITION + 3)).thenReturn(request);
+
+        assertSame(request, waitingRoomPartitioner.loadWRAccessRequestByDialInCode(WR_ID, DIAL_IN_CODE));
+        verify(waitingRoomAccessRequestDao, times(4))
+                .loadWRAccessRequestByDialInCodeAndWrIdAndPartition(eq(DIAL_IN_CODE), eq(WR_ID), anyInt());
+    }
+}